@@ -0,0 +1,97 @@
+package org.k.config;
+
+import org.k.service.BandwidthService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collections;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+
+public abstract class AbstractFileRegionHttpMessageConverter<T> implements HttpMessageConverter<T> {
+    private final Class<T> regionClass;
+    final BandwidthService bandwidthService;
+
+    protected AbstractFileRegionHttpMessageConverter(Class<T> regionClass,
+                                                     BandwidthService bandwidthService) {
+        this.regionClass = regionClass;
+        this.bandwidthService = bandwidthService;
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+        return regionClass.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public List<MediaType> getSupportedMediaTypes() {
+        return Collections.singletonList(MediaType.ALL);
+    }
+
+    @Override
+    public T read(Class<? extends T> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("File regions can only be written");
+    }
+
+    @Override
+    public void write(T region, MediaType contentType, HttpOutputMessage outputMessage)
+            throws IOException {
+        HttpHeaders headers = outputMessage.getHeaders();
+        if (headers.getContentType() == null && contentType != null &&
+                contentType.isConcrete()) {
+            headers.setContentType(contentType);
+        }
+        long contentLength = getContentLength(region);
+        if (headers.getContentLength() < 0 && contentLength >= 0) {
+            headers.setContentLength(contentLength);
+        }
+
+        writeInternal(region, outputMessage);
+    }
+
+    protected abstract long getContentLength(T region);
+
+    protected abstract void writeInternal(T region, HttpOutputMessage outputMessage)
+            throws IOException;
+
+    static void transfer(FileChannel channel,
+                         long position,
+                         long count,
+                         WritableByteChannel target) throws IOException {
+        long end = position + count;
+        while (position < end) {
+            long transferred = channel.transferTo(position, end - position, target);
+            if (transferred <= 0) {
+                throw new EOFException("Unexpected end of file at position " + position);
+            }
+            position += transferred;
+        }
+    }
+
+    static HttpServletRequest currentRequest() {
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        return requestAttributes instanceof ServletRequestAttributes ?
+                ((ServletRequestAttributes) requestAttributes).getRequest() : null;
+    }
+
+    static String remoteUser(HttpServletRequest request) {
+        return request != null ? request.getRemoteUser() : null;
+    }
+}
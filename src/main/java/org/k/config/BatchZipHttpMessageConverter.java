@@ -0,0 +1,33 @@
+package org.k.config;
+
+import org.k.data.BatchZip;
+import org.k.service.BandwidthService;
+import org.k.service.DirectoryArchiveService;
+import org.springframework.http.HttpOutputMessage;
+
+import java.io.IOException;
+
+public class BatchZipHttpMessageConverter
+        extends AbstractFileRegionHttpMessageConverter<BatchZip> {
+    private final DirectoryArchiveService directoryArchiveService;
+
+    public BatchZipHttpMessageConverter(BandwidthService bandwidthService,
+                                        DirectoryArchiveService directoryArchiveService) {
+        super(BatchZip.class, bandwidthService);
+        this.directoryArchiveService = directoryArchiveService;
+    }
+
+    @Override
+    protected long getContentLength(BatchZip zip) {
+        return -1L;
+    }
+
+    @Override
+    protected void writeInternal(BatchZip zip, HttpOutputMessage outputMessage)
+            throws IOException {
+        try (BandwidthService.Throttle throttle =
+                     bandwidthService.openThrottle(remoteUser(currentRequest()))) {
+            directoryArchiveService.writeBatchZip(zip, throttle.wrap(outputMessage.getBody()));
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package org.k.config;
+
+import org.k.data.ByteBufferRegion;
+import org.k.service.BandwidthService;
+import org.springframework.http.HttpOutputMessage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+public class ByteBufferRegionHttpMessageConverter
+        extends AbstractFileRegionHttpMessageConverter<ByteBufferRegion> {
+
+    public ByteBufferRegionHttpMessageConverter(BandwidthService bandwidthService) {
+        super(ByteBufferRegion.class, bandwidthService);
+    }
+
+    @Override
+    protected long getContentLength(ByteBufferRegion region) {
+        return region.getCount();
+    }
+
+    @Override
+    protected void writeInternal(ByteBufferRegion region, HttpOutputMessage outputMessage)
+            throws IOException {
+        if (region.getCount() == 0) {
+            return;
+        }
+
+        try (BandwidthService.Throttle throttle =
+                     bandwidthService.openThrottle(remoteUser(currentRequest()))) {
+            ByteBuffer content = region.getContent().duplicate();
+            content.position(region.getPosition());
+            content.limit(region.getPosition() + region.getCount());
+            WritableByteChannel target =
+                    Channels.newChannel(throttle.wrap(outputMessage.getBody()));
+            while (content.hasRemaining()) {
+                target.write(content);
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package org.k.config;
+
+import org.k.data.CompressingFileRegion;
+import org.k.service.BandwidthService;
+import org.k.service.CompressionService;
+import org.springframework.http.HttpOutputMessage;
+
+import java.io.IOException;
+
+public class CompressingFileRegionHttpMessageConverter
+        extends AbstractFileRegionHttpMessageConverter<CompressingFileRegion> {
+    private final CompressionService compressionService;
+
+    public CompressingFileRegionHttpMessageConverter(BandwidthService bandwidthService,
+                                                     CompressionService compressionService) {
+        super(CompressingFileRegion.class, bandwidthService);
+        this.compressionService = compressionService;
+    }
+
+    @Override
+    protected long getContentLength(CompressingFileRegion region) {
+        return -1L;
+    }
+
+    @Override
+    protected void writeInternal(CompressingFileRegion region, HttpOutputMessage outputMessage)
+            throws IOException {
+        try (BandwidthService.Throttle throttle =
+                     bandwidthService.openThrottle(remoteUser(currentRequest()))) {
+            compressionService.compress(region, throttle.wrap(outputMessage.getBody()));
+        }
+    }
+}
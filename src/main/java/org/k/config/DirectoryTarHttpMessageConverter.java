@@ -0,0 +1,33 @@
+package org.k.config;
+
+import org.k.data.DirectoryTar;
+import org.k.service.BandwidthService;
+import org.k.service.DirectoryArchiveService;
+import org.springframework.http.HttpOutputMessage;
+
+import java.io.IOException;
+
+public class DirectoryTarHttpMessageConverter
+        extends AbstractFileRegionHttpMessageConverter<DirectoryTar> {
+    private final DirectoryArchiveService directoryArchiveService;
+
+    public DirectoryTarHttpMessageConverter(BandwidthService bandwidthService,
+                                            DirectoryArchiveService directoryArchiveService) {
+        super(DirectoryTar.class, bandwidthService);
+        this.directoryArchiveService = directoryArchiveService;
+    }
+
+    @Override
+    protected long getContentLength(DirectoryTar tar) {
+        return -1L;
+    }
+
+    @Override
+    protected void writeInternal(DirectoryTar tar, HttpOutputMessage outputMessage)
+            throws IOException {
+        try (BandwidthService.Throttle throttle =
+                     bandwidthService.openThrottle(remoteUser(currentRequest()))) {
+            directoryArchiveService.writeTar(tar, throttle.wrap(outputMessage.getBody()));
+        }
+    }
+}
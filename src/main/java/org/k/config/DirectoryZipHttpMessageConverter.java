@@ -0,0 +1,33 @@
+package org.k.config;
+
+import org.k.data.DirectoryZip;
+import org.k.service.BandwidthService;
+import org.k.service.DirectoryArchiveService;
+import org.springframework.http.HttpOutputMessage;
+
+import java.io.IOException;
+
+public class DirectoryZipHttpMessageConverter
+        extends AbstractFileRegionHttpMessageConverter<DirectoryZip> {
+    private final DirectoryArchiveService directoryArchiveService;
+
+    public DirectoryZipHttpMessageConverter(BandwidthService bandwidthService,
+                                            DirectoryArchiveService directoryArchiveService) {
+        super(DirectoryZip.class, bandwidthService);
+        this.directoryArchiveService = directoryArchiveService;
+    }
+
+    @Override
+    protected long getContentLength(DirectoryZip zip) {
+        return -1L;
+    }
+
+    @Override
+    protected void writeInternal(DirectoryZip zip, HttpOutputMessage outputMessage)
+            throws IOException {
+        try (BandwidthService.Throttle throttle =
+                     bandwidthService.openThrottle(remoteUser(currentRequest()))) {
+            directoryArchiveService.writeZip(zip, throttle.wrap(outputMessage.getBody()));
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package org.k.config;
+
+import org.k.service.BandwidthService;
+import org.k.service.CompressionService;
+import org.k.service.DirectoryArchiveService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+
+import java.util.List;
+
+@Configuration
+public class DownloadConfig extends WebMvcConfigurerAdapter {
+    private final BandwidthService bandwidthService;
+    private final CompressionService compressionService;
+    private final DirectoryArchiveService directoryArchiveService;
+
+    @Autowired
+    public DownloadConfig(BandwidthService bandwidthService,
+                          CompressionService compressionService,
+                          DirectoryArchiveService directoryArchiveService) {
+        this.bandwidthService = bandwidthService;
+        this.compressionService = compressionService;
+        this.directoryArchiveService = directoryArchiveService;
+    }
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(0, new DirectoryZipHttpMessageConverter(bandwidthService,
+                directoryArchiveService));
+        converters.add(0, new BatchZipHttpMessageConverter(bandwidthService,
+                directoryArchiveService));
+        converters.add(0, new DirectoryTarHttpMessageConverter(bandwidthService,
+                directoryArchiveService));
+        converters.add(0, new StoredZipRegionHttpMessageConverter(bandwidthService,
+                directoryArchiveService));
+        converters.add(0, new ByteBufferRegionHttpMessageConverter(bandwidthService));
+        converters.add(0, new CompressingFileRegionHttpMessageConverter(bandwidthService,
+                compressionService));
+        converters.add(0, new MultipartFileRegionHttpMessageConverter(bandwidthService));
+        converters.add(0, new FileRegionHttpMessageConverter(bandwidthService));
+    }
+}
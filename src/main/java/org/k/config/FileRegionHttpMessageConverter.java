@@ -0,0 +1,62 @@
+package org.k.config;
+
+import org.k.data.FileRegion;
+import org.k.service.BandwidthService;
+import org.springframework.http.HttpOutputMessage;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import javax.servlet.http.HttpServletRequest;
+
+public class FileRegionHttpMessageConverter
+        extends AbstractFileRegionHttpMessageConverter<FileRegion> {
+    private static final String SENDFILE_SUPPORT_ATTRIBUTE = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTRIBUTE = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTRIBUTE = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTRIBUTE = "org.apache.tomcat.sendfile.end";
+
+    public FileRegionHttpMessageConverter(BandwidthService bandwidthService) {
+        super(FileRegion.class, bandwidthService);
+    }
+
+    @Override
+    protected long getContentLength(FileRegion fileRegion) {
+        return fileRegion.getCount();
+    }
+
+    @Override
+    protected void writeInternal(FileRegion fileRegion, HttpOutputMessage outputMessage)
+            throws IOException {
+        if (fileRegion.getCount() == 0) {
+            return;
+        }
+
+        HttpServletRequest request = currentRequest();
+        try (BandwidthService.Throttle throttle =
+                     bandwidthService.openThrottle(remoteUser(request))) {
+            if (!throttle.isLimited() && isSendfileSupported(request)) {
+                throttle.acquire(fileRegion.getCount());
+                request.setAttribute(SENDFILE_FILENAME_ATTRIBUTE,
+                        fileRegion.getFile().toAbsolutePath().toString());
+                request.setAttribute(SENDFILE_START_ATTRIBUTE, fileRegion.getPosition());
+                request.setAttribute(SENDFILE_END_ATTRIBUTE,
+                        fileRegion.getPosition() + fileRegion.getCount());
+                return;
+            }
+
+            try (FileChannel channel = FileChannel.open(fileRegion.getFile(),
+                    StandardOpenOption.READ)) {
+                transfer(channel, fileRegion.getPosition(), fileRegion.getCount(),
+                        Channels.newChannel(throttle.wrap(outputMessage.getBody())));
+            }
+        }
+    }
+
+    public static boolean isSendfileSupported(HttpServletRequest request) {
+        return request != null &&
+                Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTRIBUTE));
+    }
+}
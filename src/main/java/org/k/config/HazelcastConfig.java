@@ -4,8 +4,11 @@ import com.hazelcast.client.HazelcastClient;
 import com.hazelcast.client.config.ClientConfig;
 import com.hazelcast.client.config.ClientNetworkConfig;
 import com.hazelcast.config.GroupConfig;
+import com.hazelcast.config.InMemoryFormat;
+import com.hazelcast.config.NearCacheConfig;
 import com.hazelcast.core.HazelcastInstance;
 
+import org.k.service.ClusterListingCache;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -16,11 +19,25 @@ public class HazelcastConfig {
     @Bean
     public HazelcastInstance hazelcastInstance(@Value("${hazelcast.addresses}") String[] addresses,
                                                @Value("${hazelcast.username}") String username,
-                                               @Value("${hazelcast.password}") String password) {
+                                               @Value("${hazelcast.password}") String password,
+                                               @Value("${listing.cache.cluster.enabled}")
+                                                       boolean clusterListingCacheEnabled,
+                                               @Value("${listing.cache.cluster.near.cache.size}")
+                                                       int nearCacheSize,
+                                               @Value("${listing.cache.refresh.seconds}")
+                                                       int listingCacheRefreshSeconds) {
         ClientConfig clientConfig = new ClientConfig();
         clientConfig.setGroupConfig(new GroupConfig(username, password));
         ClientNetworkConfig networkConfig = clientConfig.getNetworkConfig();
         networkConfig.addAddress(addresses);
+        if (clusterListingCacheEnabled) {
+            clientConfig.addNearCacheConfig(
+                    new NearCacheConfig(ClusterListingCache.LISTING_CACHE_MAP)
+                            .setInMemoryFormat(InMemoryFormat.OBJECT)
+                            .setInvalidateOnChange(true)
+                            .setMaxSize(nearCacheSize)
+                            .setTimeToLiveSeconds(listingCacheRefreshSeconds));
+        }
         return HazelcastClient.newHazelcastClient(clientConfig);
     }
 }
@@ -0,0 +1,99 @@
+package org.k.config;
+
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+
+import org.k.service.BandwidthService;
+import org.k.service.ClusterListingCache;
+import org.k.service.ContentDigestService;
+import org.k.service.DirService;
+import org.k.service.DirectorySizeService;
+import org.k.service.DirectoryWatchService;
+import org.k.service.HotFileCache;
+import org.k.service.SearchService;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public PublicMetrics listingCacheMetrics(DirService dirService,
+                                             DirectoryWatchService directoryWatchService,
+                                             ClusterListingCache clusterListingCache) {
+        return () -> {
+            CacheStats stats = dirService.listingCacheStats();
+            return ImmutableList.of(
+                    new Metric<>("dirlist.listing.cache.size", dirService.listingCacheSize()),
+                    new Metric<>("dirlist.listing.cache.hit.ratio", stats.hitRate()),
+                    new Metric<>("dirlist.listing.cache.hits", stats.hitCount()),
+                    new Metric<>("dirlist.listing.cache.misses", stats.missCount()),
+                    new Metric<>("dirlist.listing.cache.evictions", stats.evictionCount()),
+                    new Metric<>("dirlist.listing.cache.load.failures", stats.loadExceptionCount()),
+                    new Metric<>("dirlist.listing.cache.load.average.millis",
+                            stats.averageLoadPenalty() / TimeUnit.MILLISECONDS.toNanos(1)),
+                    new Metric<>("dirlist.listing.cache.load.total.millis",
+                            TimeUnit.NANOSECONDS.toMillis(stats.totalLoadTime())),
+                    new Metric<>("dirlist.listing.cache.shared.hits",
+                            clusterListingCache.sharedHitCount()),
+                    new Metric<>("dirlist.listing.cache.shared.loads",
+                            clusterListingCache.sharedLoadCount()),
+                    new Metric<>("dirlist.watch.directories",
+                            directoryWatchService.watchedDirectoryCount()),
+                    new Metric<>("dirlist.watch.index.directories",
+                            directoryWatchService.indexedDirectoryCount()));
+        };
+    }
+
+    @Bean
+    public PublicMetrics searchIndexMetrics(SearchService searchService) {
+        return () -> ImmutableList.of(
+                new Metric<>("dirlist.search.index.paths", searchService.indexedPathCount()),
+                new Metric<>("dirlist.search.index.build.millis",
+                        searchService.lastBuildMillis()));
+    }
+
+    @Bean
+    public PublicMetrics directorySizeIndexMetrics(DirectorySizeService directorySizeService) {
+        return () -> ImmutableList.of(new Metric<>("dirlist.size.index.directories",
+                directorySizeService.indexedDirectoryCount()));
+    }
+
+    @Bean
+    public PublicMetrics bandwidthMetrics(BandwidthService bandwidthService) {
+        return () -> {
+            List<Metric<?>> metrics = new ArrayList<>();
+            metrics.add(new Metric<>("dirlist.bandwidth.active.streams",
+                    bandwidthService.activeStreamCount()));
+            metrics.add(new Metric<>("dirlist.bandwidth.total.bytes.per.second",
+                    bandwidthService.totalThroughput()));
+            bandwidthService.throughputByUser().forEach((username, bytesPerSecond) ->
+                    metrics.add(new Metric<>("dirlist.bandwidth.user." + username +
+                            ".bytes.per.second", bytesPerSecond)));
+            return metrics;
+        };
+    }
+
+    @Bean
+    public PublicMetrics hotFileCacheMetrics(HotFileCache hotFileCache) {
+        return () -> ImmutableList.of(
+                new Metric<>("dirlist.hot.file.cache.entries", hotFileCache.entryCount()),
+                new Metric<>("dirlist.hot.file.cache.bytes", hotFileCache.cachedBytes()),
+                new Metric<>("dirlist.hot.file.cache.hits", hotFileCache.hitCount()),
+                new Metric<>("dirlist.hot.file.cache.misses", hotFileCache.missCount()),
+                new Metric<>("dirlist.hot.file.cache.rejections",
+                        hotFileCache.rejectionCount()));
+    }
+
+    @Bean
+    public PublicMetrics contentDigestMetrics(ContentDigestService contentDigestService) {
+        return () -> ImmutableList.of(new Metric<>("dirlist.content.digest.entries",
+                contentDigestService.cachedDigestCount()));
+    }
+}
@@ -0,0 +1,43 @@
+package org.k.config;
+
+import org.k.data.MultipartFileRegion;
+import org.k.service.BandwidthService;
+import org.springframework.http.HttpOutputMessage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+public class MultipartFileRegionHttpMessageConverter
+        extends AbstractFileRegionHttpMessageConverter<MultipartFileRegion> {
+
+    public MultipartFileRegionHttpMessageConverter(BandwidthService bandwidthService) {
+        super(MultipartFileRegion.class, bandwidthService);
+    }
+
+    @Override
+    protected long getContentLength(MultipartFileRegion multipartFileRegion) {
+        return multipartFileRegion.getContentLength();
+    }
+
+    @Override
+    protected void writeInternal(MultipartFileRegion multipartFileRegion,
+                                 HttpOutputMessage outputMessage) throws IOException {
+        try (BandwidthService.Throttle throttle =
+                     bandwidthService.openThrottle(remoteUser(currentRequest()))) {
+            OutputStream output = throttle.wrap(outputMessage.getBody());
+            WritableByteChannel target = Channels.newChannel(output);
+            try (FileChannel channel = FileChannel.open(multipartFileRegion.getFile(),
+                    StandardOpenOption.READ)) {
+                for (MultipartFileRegion.Part part : multipartFileRegion.getParts()) {
+                    output.write(multipartFileRegion.buildPartHeader(part));
+                    transfer(channel, part.getPosition(), part.getCount(), target);
+                }
+            }
+            output.write(multipartFileRegion.buildClosingDelimiter());
+        }
+    }
+}
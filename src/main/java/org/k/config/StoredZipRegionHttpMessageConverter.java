@@ -0,0 +1,41 @@
+package org.k.config;
+
+import org.k.data.StoredZipRegion;
+import org.k.service.BandwidthService;
+import org.k.service.DirectoryArchiveService;
+import org.springframework.http.HttpOutputMessage;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+public class StoredZipRegionHttpMessageConverter
+        extends AbstractFileRegionHttpMessageConverter<StoredZipRegion> {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final DirectoryArchiveService directoryArchiveService;
+
+    public StoredZipRegionHttpMessageConverter(BandwidthService bandwidthService,
+                                               DirectoryArchiveService directoryArchiveService) {
+        super(StoredZipRegion.class, bandwidthService);
+        this.directoryArchiveService = directoryArchiveService;
+    }
+
+    @Override
+    protected long getContentLength(StoredZipRegion region) {
+        return region.getCount();
+    }
+
+    @Override
+    protected void writeInternal(StoredZipRegion region, HttpOutputMessage outputMessage)
+            throws IOException {
+        try (BandwidthService.Throttle throttle =
+                     bandwidthService.openThrottle(remoteUser(currentRequest()))) {
+            OutputStream output = new BufferedOutputStream(
+                    throttle.wrap(outputMessage.getBody()), BUFFER_SIZE);
+            directoryArchiveService.writeStoredZip(region.getLayout(), region.getPosition(),
+                    region.getCount(), output);
+            output.flush();
+        }
+    }
+}
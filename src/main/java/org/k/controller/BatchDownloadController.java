@@ -0,0 +1,76 @@
+package org.k.controller;
+
+import org.apache.commons.io.FilenameUtils;
+import org.k.data.ArchiveFormat;
+import org.k.data.BatchZip;
+import org.k.dto.BatchDownloadDto;
+import org.k.exception.FileNotFoundException;
+import org.k.exception.InvalidBatchSelectionException;
+import org.k.service.DirService;
+import org.k.service.DirectoryArchiveService;
+import org.k.service.PropertiesService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+@Controller
+public class BatchDownloadController {
+    private static final String DL_BATCH = "/dl_batch";
+    private static final String BATCH_FILE_NAME = "download.zip";
+    private static final int MAX_BATCH_PATHS = 1000;
+
+    private final DirService dirService;
+    private final DirectoryArchiveService directoryArchiveService;
+    private final PropertiesService propertiesService;
+
+    @Autowired
+    public BatchDownloadController(DirService dirService,
+                                   DirectoryArchiveService directoryArchiveService,
+                                   PropertiesService propertiesService) {
+        this.dirService = dirService;
+        this.directoryArchiveService = directoryArchiveService;
+        this.propertiesService = propertiesService;
+    }
+
+    @PostMapping(DL_BATCH)
+    public ResponseEntity<BatchZip> downloadBatch(@RequestBody BatchDownloadDto batchDownloadDto)
+            throws IOException {
+        List<String> paths = batchDownloadDto.getPaths();
+        if (paths == null || paths.isEmpty() || paths.size() > MAX_BATCH_PATHS) {
+            throw new InvalidBatchSelectionException("Selection should contain between 1 and " +
+                    MAX_BATCH_PATHS + " paths");
+        }
+
+        List<Path> selection = new ArrayList<>();
+        for (String path : paths) {
+            selection.add(resolve(path));
+        }
+        BatchZip zip = directoryArchiveService.planBatchZip(dirService.getRootPath(), selection,
+                propertiesService.maxAllowedDirectoryDownloadSize());
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=" + BATCH_FILE_NAME);
+        headers.set(HttpHeaders.CONTENT_TYPE, ArchiveFormat.ZIP.getContentType());
+        return new ResponseEntity<>(zip, headers, HttpStatus.OK);
+    }
+
+    // paths from the body never went through the servlet container's URI normalization
+    private Path resolve(String path) {
+        String normalizedPath = path == null ? null : FilenameUtils.normalize(path, true);
+        if (normalizedPath == null) {
+            throw new InvalidBatchSelectionException("Invalid path in selection: " + path);
+        }
+        return dirService.resolveFileOrDirectory(normalizedPath)
+                .orElseThrow(() -> new FileNotFoundException("File " + normalizedPath +
+                        " is not found!"));
+    }
+}
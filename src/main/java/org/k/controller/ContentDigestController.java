@@ -0,0 +1,74 @@
+package org.k.controller;
+
+import org.k.dto.ContentDigestDto;
+import org.k.exception.FileNotFoundException;
+import org.k.exception.NotFileException;
+import org.k.exception.UnknownException;
+import org.k.service.ContentDigestService;
+import org.k.service.DirService;
+import org.k.util.PathUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Optional;
+
+import javax.servlet.http.HttpServletRequest;
+
+@RestController
+public class ContentDigestController {
+    private static final String HASH = "/hash";
+
+    private final DirService dirService;
+    private final ContentDigestService contentDigestService;
+
+    @Autowired
+    public ContentDigestController(DirService dirService,
+                                   ContentDigestService contentDigestService) {
+        this.dirService = dirService;
+        this.contentDigestService = contentDigestService;
+    }
+
+    @GetMapping(value = HASH + "/**", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public DeferredResult<ContentDigestDto> digestOfFile(HttpServletRequest request) {
+        String pathParameter = PathUtil.extractPath(HASH, request.getRequestURI()
+                .substring(request.getContextPath().length()));
+
+        Optional<Path> pathOptional = dirService.resolveFileOrDirectory(pathParameter);
+        if (!pathOptional.isPresent()) {
+            throw new FileNotFoundException();
+        }
+
+        Path file = pathOptional.get();
+        if (!Files.isRegularFile(file)) {
+            throw new NotFileException();
+        }
+
+        BasicFileAttributes fileAttributes;
+        try {
+            fileAttributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException e) {
+            throw new UnknownException("Failed to read file attributes: " +
+                    file.toAbsolutePath());
+        }
+
+        // hashing a large file can take much longer than the default async timeout
+        DeferredResult<ContentDigestDto> result = new DeferredResult<>(0L);
+        contentDigestService.digestOf(file, fileAttributes).whenComplete((digest, e) -> {
+            if (e != null) {
+                result.setErrorResult(new UnknownException("Failed to compute digest of " +
+                        file.toAbsolutePath(), e));
+            } else {
+                result.setResult(new ContentDigestDto(pathParameter, digest.getSize(),
+                        digest.getSha256Hex()));
+            }
+        });
+        return result;
+    }
+}
@@ -1,63 +1,85 @@
 package org.k.controller;
 
-import com.google.common.base.Stopwatch;
-import com.google.common.io.ByteStreams;
-
-import com.hazelcast.core.HazelcastInstance;
-import com.hazelcast.core.ILock;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
+import org.k.data.ArchiveFormat;
+import org.k.data.DirectoryTar;
+import org.k.data.DirectoryZip;
+import org.k.data.StoredZipRegion;
 import org.k.exception.DirectoryNotFoundException;
 import org.k.exception.MaxDirectoryDownloadSizeExceededException;
 import org.k.exception.NotDirectoryException;
-import org.k.exception.UnknownException;
+import org.k.service.AsyncTransferService;
+import org.k.service.BandwidthService;
+import org.k.service.CompressionService;
+import org.k.service.ContentDigestService;
+import org.k.service.ContentTypeService;
 import org.k.service.DirService;
+import org.k.service.DirectoryArchiveService;
+import org.k.service.DirectorySizeService;
+import org.k.service.HotFileCache;
 import org.k.service.PropertiesService;
+import org.k.util.ByteRangeSpec;
 import org.k.util.PathUtil;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.k.util.StoredZipLayout;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.ServletWebRequest;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.attribute.FileTime;
-import java.time.Instant;
-import java.util.Iterator;
 import java.util.Optional;
-import java.util.concurrent.TimeUnit;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 @Controller
 public class DirectoryDownloadController extends PathController {
     static final String DL_DIR = "/dl_dir";
-    private static final Logger logger = LoggerFactory.getLogger(DirectoryDownloadController.class);
-    private static final String ZIP_EXTENSION = "zip";
+    private static final String RESUMABLE_PARAMETER = "resumable";
+    private static final String STORED_ZIP_PLAN_ATTRIBUTE =
+            DirectoryDownloadController.class.getName() + ".storedZipPlan";
 
     private final DirService dirService;
+    private final DirectorySizeService directorySizeService;
     private final PropertiesService propertiesService;
-    private final HazelcastInstance hazelcastInstance;
+    private final DirectoryArchiveService directoryArchiveService;
 
 
     @Autowired
     public DirectoryDownloadController(DirService dirService,
+                                       DirectorySizeService directorySizeService,
                                        PropertiesService propertiesService,
-                                       HazelcastInstance hazelcastInstance) throws IOException {
+                                       DirectoryArchiveService directoryArchiveService,
+                                       ContentTypeService contentTypeService,
+                                       CompressionService compressionService,
+                                       HotFileCache hotFileCache,
+                                       ContentDigestService contentDigestService,
+                                       BandwidthService bandwidthService,
+                                       AsyncTransferService asyncTransferService)
+            throws IOException {
+        super(contentTypeService, compressionService, hotFileCache,
+                contentDigestService, bandwidthService, asyncTransferService);
         this.dirService = dirService;
+        this.directorySizeService = directorySizeService;
+        this.directoryArchiveService = directoryArchiveService;
         this.propertiesService = propertiesService;
-        this.hazelcastInstance = hazelcastInstance;
     }
 
     @GetMapping(DL_DIR + "/**")
@@ -67,8 +89,8 @@ public class DirectoryDownloadController extends PathController {
         String pathParameter = PathUtil.extractPath(DL_DIR, request.getRequestURI()
                 .substring(request.getContextPath().length()));
 
-        checkZipExtension(pathParameter);
-        String relativePath = getPathWithoutZipExtension(pathParameter);
+        ArchiveFormat format = checkArchiveExtension(pathParameter);
+        String relativePath = format.stripExtension(pathParameter);
 
         Optional<Path> pathOptional = dirService.resolveFileOrDirectory(relativePath);
         if (!pathOptional.isPresent()) {
@@ -81,102 +103,134 @@ public class DirectoryDownloadController extends PathController {
         }
 
         validateDirectorySize(directory);
-        return downloadZipped(relativePath, directory);
-    }
-
-    private void checkZipExtension(String pathParameter) {
-        if (!ZIP_EXTENSION.equalsIgnoreCase(FilenameUtils.getExtension(pathParameter))) {
-            throw new NotDirectoryException();
+        if (format != ArchiveFormat.ZIP) {
+            return downloadTar(pathParameter, directory, format);
         }
+        if (Boolean.parseBoolean(request.getParameter(RESUMABLE_PARAMETER))) {
+            return downloadStoredZip(relativePath, directory);
+        }
+        return downloadZipped(relativePath, directory);
     }
 
-    private String getPathWithoutZipExtension(String path) {
-        return path.substring(0, path.length() - ZIP_EXTENSION.length() - 1);
+    private ArchiveFormat checkArchiveExtension(String pathParameter) {
+        return ArchiveFormat.fromPath(pathParameter).orElseThrow(NotDirectoryException::new);
     }
 
     private void validateDirectorySize(Path directory) {
-        long sizeOfDirectory = FileUtils.sizeOfDirectory(directory.toFile());
+        long sizeOfDirectory = directorySizeService.sizeOf(directory)
+                .orElseGet(() -> FileUtils.sizeOfDirectory(directory.toFile()));
         if (sizeOfDirectory > propertiesService.maxAllowedDirectoryDownloadSize()) {
             throw new MaxDirectoryDownloadSizeExceededException();
         }
     }
 
+    // tar has no central directory to keep, so it goes straight from the walk to the client
+    private ResponseEntity<?> downloadTar(String pathParameter,
+                                          Path directory,
+                                          ArchiveFormat format) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=" +
+                FilenameUtils.getName(pathParameter));
+        headers.set(HttpHeaders.CONTENT_TYPE, format.getContentType());
+        return new ResponseEntity<>(new DirectoryTar(directory, format), headers,
+                HttpStatus.OK);
+    }
+
     private ResponseEntity<?> downloadZipped(String relativePath, Path directory)
             throws IOException {
         Path targetPath = getTargetDirectoryPath(relativePath);
-        String targetPathString = targetPath.toAbsolutePath().toString();
-
-        ILock lock = createLockForTargetPath(targetPathString);
-
-        try {
-            if (Files.exists(targetPath)) {
-                deleteIfObsolete(directory, targetPath);
-            }
-
-            if (Files.exists(targetPath)) {
-                updateLastModifiedDateOfTargetPath(targetPath);
-            } else {
-                zipDirectoryToTempDir(directory, targetPath);
-            }
-        } finally {
-            lock.unlock();
-            logger.debug("Unlocked zipped directory download for {}", targetPathString);
+        if (directoryArchiveService.isZipCacheCurrent(directory, targetPath)) {
+            directoryArchiveService.touchZipCache(targetPath);
+            return downloadFile(targetPath);
         }
 
-        return downloadFile(targetPath);
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=" +
+                targetPath.getFileName().toString());
+        headers.set(HttpHeaders.CONTENT_TYPE, ArchiveFormat.ZIP.getContentType());
+        return new ResponseEntity<>(new DirectoryZip(directory, targetPath), headers,
+                HttpStatus.OK);
     }
 
-    private Path getTargetDirectoryPath(String relativePath) {
-        return Paths.get(dirService.getTempDir() +
-                File.separator + relativePath + ".zip");
-    }
+    // the archive is laid out from the file manifest alone, so its length and every byte
+    // offset are fixed up front and interrupted downloads can resume with a range request
+    private ResponseEntity<?> downloadStoredZip(String relativePath, Path directory)
+            throws IOException {
+        ServletRequestAttributes requestAttributes =
+                (ServletRequestAttributes) RequestContextHolder.currentRequestAttributes();
+        HttpServletRequest request = requestAttributes.getRequest();
+        HttpServletResponse response = requestAttributes.getResponse();
+
+        // the request waits for the plan without holding a container thread and is dispatched
+        // again once it is ready
+        @SuppressWarnings("unchecked")
+        CompletableFuture<StoredZipLayout> plan = (CompletableFuture<StoredZipLayout>)
+                request.getAttribute(STORED_ZIP_PLAN_ATTRIBUTE);
+        if (plan == null) {
+            plan = directoryArchiveService.planStoredZip(directory);
+            if (!plan.isDone() && request.isAsyncSupported()) {
+                request.setAttribute(STORED_ZIP_PLAN_ATTRIBUTE, plan);
+                AsyncContext asyncContext = request.startAsync();
+                asyncContext.setTimeout(0L);
+                plan.whenComplete((layout, e) -> asyncContext.dispatch());
+                return null;
+            }
+        }
 
-    private ILock createLockForTargetPath(String targetPathString) {
-        ILock lock = hazelcastInstance.getLock(targetPathString);
+        StoredZipLayout layout;
         try {
-            logger.debug("Trying to acquire zipped directory download lock for {}", targetPathString);
-            Stopwatch stopwatch = Stopwatch.createStarted();
-            lock.tryLock(1L, TimeUnit.MINUTES);
-            logger.debug("Acquired zipped directory download lock for {} in {}",
-                    targetPathString, stopwatch);
-        } catch (InterruptedException e) {
-            throw new UnknownException("Interrupted while trying to acquire the " +
-                    "zipped directory download lock for " + targetPathString, e);
+            layout = plan.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+        long lastModified = layout.getEntries().stream()
+                .mapToLong(StoredZipLayout.Entry::getLastModified)
+                .max()
+                .orElse(0L);
+        String eTag = buildETag(layout);
+        if (new ServletWebRequest(request, response).checkNotModified(eTag, lastModified)) {
+            return null;
         }
-        return lock;
-    }
-
-    private void deleteIfObsolete(Path directory, Path targetPath) throws IOException {
-        FileTime zipLastModified = Files.getLastModifiedTime(targetPath);
-        FileTime originalDirLastModified = Files.getLastModifiedTime(directory);
-        boolean shouldBeRecreated =
-                originalDirLastModified.toInstant().isAfter(zipLastModified.toInstant());
 
-        if (shouldBeRecreated) {
-            Files.delete(targetPath);
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=" +
+                getTargetDirectoryPath(relativePath).getFileName().toString());
+        headers.set(HttpHeaders.CONTENT_TYPE, ArchiveFormat.ZIP.getContentType());
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        Optional<ByteRangeSpec> byteRangeSpecOptional =
+                isRangeApplicable(request, eTag, lastModified) ?
+                        extractByteRangeSpec(request, layout.getLength()) : Optional.empty();
+        if (byteRangeSpecOptional.isPresent() && byteRangeSpecOptional.get().isSingleRange()) {
+            ByteRangeSpec byteRangeSpec = byteRangeSpecOptional.get();
+            ByteRangeSpec.ByteRange range = byteRangeSpec.getRanges().get(0);
+            headers.setContentLength(range.getLength());
+            headers.set(HttpHeaders.CONTENT_RANGE, byteRangeSpec.buildContentRangeHeader(range));
+            return transferAsync(new ResponseEntity<>(
+                    new StoredZipRegion(layout, range.getStart(), range.getLength()),
+                    headers, HttpStatus.PARTIAL_CONTENT));
         }
+
+        headers.setContentLength(layout.getLength());
+        return transferAsync(new ResponseEntity<>(
+                new StoredZipRegion(layout, 0L, layout.getLength()), headers, HttpStatus.OK));
     }
 
-    private void zipDirectoryToTempDir(Path directory, Path targetPath) throws IOException {
-        Files.createDirectories(targetPath.getParent());
-
-        try (ZipOutputStream output = new ZipOutputStream(
-                new BufferedOutputStream(Files.newOutputStream(targetPath)))) {
-            Iterator<Path> iterator = Files.walk(directory)
-                    .filter(p -> !Files.isDirectory(p)).iterator();
-            while (iterator.hasNext()) {
-                Path p = iterator.next();
-                output.putNextEntry(new ZipEntry(directory
-                        .relativize(p).toString()));
-                ByteStreams.copy(Files.newInputStream(p), output);
-                output.closeEntry();
-            }
-            output.finish();
+    private String buildETag(StoredZipLayout layout) {
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        for (StoredZipLayout.Entry entry : layout.getEntries()) {
+            hasher.putString(entry.getName(), StandardCharsets.UTF_8)
+                    .putLong(entry.getSize())
+                    .putLong(entry.getLastModified());
         }
+        return "\"zip-" + hasher.hash() + "\"";
     }
 
-    private void updateLastModifiedDateOfTargetPath(Path targetPath) throws IOException {
-        Files.setLastModifiedTime(targetPath.toAbsolutePath(),
-                FileTime.from(Instant.now()));
+    private Path getTargetDirectoryPath(String relativePath) {
+        return Paths.get(dirService.getTempDir() +
+                File.separator + relativePath + ".zip");
     }
 }
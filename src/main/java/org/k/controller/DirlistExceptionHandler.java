@@ -5,10 +5,15 @@ import org.k.exception.DirServiceException;
 import org.k.exception.DirectoryNotFoundException;
 import org.k.exception.ExtractionException;
 import org.k.exception.FileNotFoundException;
+import org.k.exception.InvalidBatchSelectionException;
+import org.k.exception.InvalidPageRequestException;
+import org.k.exception.InvalidSearchQueryException;
 import org.k.exception.MaxDirectoryDownloadSizeExceededException;
 import org.k.exception.NotDirectoryException;
 import org.k.exception.NotFileException;
 import org.k.exception.RangeNotSatisfiableException;
+import org.k.exception.SearchIndexNotReadyException;
+import org.k.exception.TreeWalkLimitExceededException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpHeaders;
@@ -27,7 +32,9 @@ public class DirlistExceptionHandler {
     public ResponseEntity<String> handleRangeNotSatisfiableException(
             RangeNotSatisfiableException e) {
         logger.warn(e.getMessage());
-        return new ResponseEntity<>(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.CONTENT_RANGE, "bytes */" + e.getContentSizeInBytes());
+        return new ResponseEntity<>(headers, HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
     }
 
     @ExceptionHandler(NotDirectoryException.class)
@@ -81,6 +88,46 @@ public class DirlistExceptionHandler {
                 1007, "Can not extract the file.");
     }
 
+    @ExceptionHandler(InvalidPageRequestException.class)
+    public ResponseEntity<ErrorDto> handleInvalidPageRequestException(
+            InvalidPageRequestException e) {
+        logger.warn(e.getMessage());
+        return responseWithError(HttpStatus.BAD_REQUEST,
+                1008, "Invalid listing page request.");
+    }
+
+    @ExceptionHandler(TreeWalkLimitExceededException.class)
+    public ResponseEntity<ErrorDto> handleTreeWalkLimitExceededException(
+            TreeWalkLimitExceededException e) {
+        logger.warn(e.getMessage());
+        return responseWithError(HttpStatus.SERVICE_UNAVAILABLE,
+                1009, "Too many concurrent tree listings, please retry later.");
+    }
+
+    @ExceptionHandler(SearchIndexNotReadyException.class)
+    public ResponseEntity<ErrorDto> handleSearchIndexNotReadyException(
+            SearchIndexNotReadyException e) {
+        logger.warn(e.getMessage());
+        return responseWithError(HttpStatus.SERVICE_UNAVAILABLE,
+                1010, "Search is not available yet, please retry later.");
+    }
+
+    @ExceptionHandler(InvalidSearchQueryException.class)
+    public ResponseEntity<ErrorDto> handleInvalidSearchQueryException(
+            InvalidSearchQueryException e) {
+        logger.warn(e.getMessage());
+        return responseWithError(HttpStatus.BAD_REQUEST,
+                1011, "Invalid search query.");
+    }
+
+    @ExceptionHandler(InvalidBatchSelectionException.class)
+    public ResponseEntity<ErrorDto> handleInvalidBatchSelectionException(
+            InvalidBatchSelectionException e) {
+        logger.warn(e.getMessage());
+        return responseWithError(HttpStatus.BAD_REQUEST,
+                1012, "Invalid download selection.");
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<ErrorDto> handleUncaughtException(Exception e) {
         logger.error(e.getMessage(), e);
@@ -0,0 +1,54 @@
+package org.k.controller;
+
+import org.apache.commons.io.FileUtils;
+import org.k.dto.DiskUsageDto;
+import org.k.exception.DirectoryNotFoundException;
+import org.k.exception.NotDirectoryException;
+import org.k.service.DirService;
+import org.k.service.DirectorySizeService;
+import org.k.util.PathUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import javax.servlet.http.HttpServletRequest;
+
+@RestController
+public class DiskUsageController {
+    private static final String DU = "/du";
+
+    private final DirService dirService;
+    private final DirectorySizeService directorySizeService;
+
+    @Autowired
+    public DiskUsageController(DirService dirService,
+                               DirectorySizeService directorySizeService) {
+        this.dirService = dirService;
+        this.directorySizeService = directorySizeService;
+    }
+
+    @GetMapping(value = DU + "/**", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public DiskUsageDto diskUsageOfDirectory(HttpServletRequest request) {
+        String pathParameter = PathUtil.extractPath(DU, request.getRequestURI()
+                .substring(request.getContextPath().length()));
+
+        Optional<Path> pathOptional = dirService.resolveFileOrDirectory(pathParameter);
+        if (!pathOptional.isPresent()) {
+            throw new DirectoryNotFoundException();
+        }
+
+        Path directory = pathOptional.get();
+        if (!Files.isDirectory(directory)) {
+            throw new NotDirectoryException();
+        }
+
+        long size = directorySizeService.sizeOf(directory)
+                .orElseGet(() -> FileUtils.sizeOfDirectory(directory.toFile()));
+        return new DiskUsageDto(pathParameter, size);
+    }
+}
@@ -2,7 +2,13 @@ package org.k.controller;
 
 import org.k.exception.FileNotFoundException;
 import org.k.exception.UnknownException;
+import org.k.service.AsyncTransferService;
+import org.k.service.BandwidthService;
+import org.k.service.CompressionService;
+import org.k.service.ContentDigestService;
+import org.k.service.ContentTypeService;
 import org.k.service.DirService;
+import org.k.service.HotFileCache;
 import org.k.util.PathUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
@@ -13,6 +19,7 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
 
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Optional;
@@ -26,12 +33,20 @@ public class FileDownloadController extends PathController {
     private final DirService dirService;
 
     @Autowired
-    public FileDownloadController(DirService dirService) {
+    public FileDownloadController(DirService dirService,
+                                  ContentTypeService contentTypeService,
+                                  CompressionService compressionService,
+                                  HotFileCache hotFileCache,
+                                  ContentDigestService contentDigestService,
+                                  BandwidthService bandwidthService,
+                                  AsyncTransferService asyncTransferService) {
+        super(contentTypeService, compressionService, hotFileCache,
+                contentDigestService, bandwidthService, asyncTransferService);
         this.dirService = dirService;
     }
 
     @GetMapping(DL + "/**")
-    public ResponseEntity<?> downloadFile() {
+    public ResponseEntity<?> downloadFile() throws IOException {
         HttpServletRequest request = ((ServletRequestAttributes) RequestContextHolder
                 .currentRequestAttributes()).getRequest();
         String pathParameter = PathUtil.extractPath(DL, request.getRequestURI()
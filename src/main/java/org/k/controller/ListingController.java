@@ -1,38 +1,113 @@
 package org.k.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.k.data.DirectoryListing;
+import org.k.data.PathInfo;
+import org.k.data.PathInfoPage;
 import org.k.dto.PathInfoDto;
+import org.k.dto.PathInfoPageDto;
 import org.k.exception.DirectoryNotFoundException;
+import org.k.exception.InvalidPageRequestException;
 import org.k.exception.NotDirectoryException;
 import org.k.service.DirService;
+import org.k.service.PropertiesService;
+import org.k.util.ListingCursor;
 import org.k.util.PathUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Optional;
-import java.util.Set;
 import java.util.stream.Collectors;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 @RestController
 public class ListingController {
     private static final String LIST = "/list";
+    private static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
 
     private final DirService dirService;
+    private final PropertiesService propertiesService;
+    private final ObjectMapper objectMapper;
 
     @Autowired
-    public ListingController(DirService dirService) {
+    public ListingController(DirService dirService,
+                             PropertiesService propertiesService,
+                             ObjectMapper objectMapper) {
         this.dirService = dirService;
+        this.propertiesService = propertiesService;
+        this.objectMapper = objectMapper;
     }
 
     @GetMapping(value = LIST + "/**", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
-    public Set<PathInfoDto> listContentOfDirectory(HttpServletRequest request) throws IOException {
+    public List<PathInfoDto> listContentOfDirectory(HttpServletRequest request,
+                                                    WebRequest webRequest) throws IOException {
+        String pathParameter = extractDirectoryPath(request);
+
+        DirectoryListing listing = dirService.getDirectoryListing(pathParameter);
+        if (webRequest.checkNotModified("\"" + listing.getDigest() + "\"")) {
+            return null;
+        }
+
+        return listing.getPathInfos().stream()
+                .map(PathInfoDto::new)
+                .collect(Collectors.toList());
+
+    }
+
+    @GetMapping(value = LIST + "/**", params = "limit",
+            produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public PathInfoPageDto listPageOfDirectory(HttpServletRequest request,
+                                               @RequestParam("limit") int limit,
+                                               @RequestParam(value = "cursor", required = false)
+                                                       String cursor) throws IOException {
+        if (limit <= 0) {
+            throw new InvalidPageRequestException("Invalid page limit: " + limit);
+        }
+        String pathParameter = extractDirectoryPath(request);
+
+        Optional<PathInfo> after = Optional.ofNullable(cursor).map(ListingCursor::decode);
+        int pageSize = Math.min(limit, propertiesService.maxListingPageSize());
+        PathInfoPage page = dirService.listPathInfoPageForDirectory(pathParameter, after, pageSize);
+
+        List<PathInfo> pathInfos = page.getPathInfos();
+        String nextCursor = page.hasMore() ?
+                ListingCursor.encode(pathInfos.get(pathInfos.size() - 1)) : null;
+        return new PathInfoPageDto(pathInfos.stream()
+                .map(PathInfoDto::new)
+                .collect(Collectors.toList()), nextCursor);
+    }
+
+    @GetMapping(value = LIST + "/**", produces = APPLICATION_NDJSON_VALUE)
+    public void streamContentOfDirectory(HttpServletRequest request,
+                                         HttpServletResponse response) throws IOException {
+        String pathParameter = extractDirectoryPath(request);
+
+        response.setContentType(APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        JsonGenerator generator = objectMapper.getFactory()
+                .createGenerator(response.getOutputStream());
+        generator.setRootValueSeparator(null);
+        dirService.forEachPathInfoInDirectory(pathParameter, pathInfo -> {
+            generator.writeObject(new PathInfoDto(pathInfo));
+            generator.writeRaw('\n');
+        });
+        generator.flush();
+    }
+
+    private String extractDirectoryPath(HttpServletRequest request) {
         String pathParameter = PathUtil.extractPath(LIST, request.getRequestURI()
                 .substring(request.getContextPath().length()));
 
@@ -46,9 +121,6 @@ public class ListingController {
             throw new NotDirectoryException();
         }
 
-        return dirService.listPathInfosForDirectory(pathParameter).stream()
-                .map(PathInfoDto::new)
-                .collect(Collectors.toCollection(LinkedHashSet::new));
-
+        return pathParameter;
     }
-}
\ No newline at end of file
+}
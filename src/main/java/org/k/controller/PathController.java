@@ -1,98 +1,300 @@
 package org.k.controller;
 
-import com.google.common.io.ByteStreams;
+import com.google.common.collect.ImmutableList;
 
+import org.k.config.FileRegionHttpMessageConverter;
+import org.k.data.ByteBufferRegion;
+import org.k.data.CompressingFileRegion;
+import org.k.data.ContentDigest;
+import org.k.data.FileRegion;
+import org.k.data.MultipartFileRegion;
+import org.k.data.StoredZipRegion;
 import org.k.exception.RangeNotSatisfiableException;
 import org.k.exception.UnknownException;
+import org.k.service.AsyncTransferService;
+import org.k.service.BandwidthService;
+import org.k.service.CompressionService;
+import org.k.service.ContentDigestService;
+import org.k.service.ContentTypeService;
+import org.k.service.HotFileCache;
 import org.k.util.ByteRangeSpec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.core.io.FileSystemResource;
-import org.springframework.core.io.InputStreamResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.MimeTypeUtils;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.ServletWebRequest;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.RandomAccessFile;
-import java.nio.channels.Channels;
-import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 public abstract class PathController {
     private static final Logger logger = LoggerFactory.getLogger(PathController.class);
+    private static final String MULTIPART_BYTERANGES_VALUE = "multipart/byteranges";
+    private static final String CACHE_CONTROL_REVALIDATE = "public, no-cache";
+
+    private final ContentTypeService contentTypeService;
+    private final CompressionService compressionService;
+    private final HotFileCache hotFileCache;
+    private final ContentDigestService contentDigestService;
+    private final BandwidthService bandwidthService;
+    private final AsyncTransferService asyncTransferService;
+
+    protected PathController(ContentTypeService contentTypeService,
+                             CompressionService compressionService,
+                             HotFileCache hotFileCache,
+                             ContentDigestService contentDigestService,
+                             BandwidthService bandwidthService,
+                             AsyncTransferService asyncTransferService) {
+        this.contentTypeService = contentTypeService;
+        this.compressionService = compressionService;
+        this.hotFileCache = hotFileCache;
+        this.contentDigestService = contentDigestService;
+        this.bandwidthService = bandwidthService;
+        this.asyncTransferService = asyncTransferService;
+    }
+
+    ResponseEntity<?> downloadFile(Path file) throws IOException {
+        return transferAsync(buildFileResponse(file));
+    }
+
+    // Once the transfer is handed over to the IO threads, nothing on the container thread may
+    // touch the response stream again, and Spring flushes the response after any message
+    // converter returns. So the status and headers are written and the transfer is started
+    // here, and the handler returns no entity for Spring to write.
+    ResponseEntity<?> transferAsync(ResponseEntity<?> responseEntity) throws IOException {
+        ServletRequestAttributes requestAttributes =
+                (ServletRequestAttributes) RequestContextHolder.currentRequestAttributes();
+        HttpServletRequest request = requestAttributes.getRequest();
+        if (responseEntity == null || !isAsyncTransferable(responseEntity.getBody()) ||
+                !asyncTransferService.isAsyncSupported(request)) {
+            return responseEntity;
+        }
+
+        Object body = responseEntity.getBody();
+        BandwidthService.Throttle throttle = bandwidthService.openThrottle(request.getRemoteUser());
+        try {
+            if (body instanceof FileRegion) {
+                FileRegion fileRegion = (FileRegion) body;
+                // unthrottled files are left to the converter, which hands them to sendfile
+                if (!throttle.isLimited() &&
+                        FileRegionHttpMessageConverter.isSendfileSupported(request)) {
+                    return responseEntity;
+                }
+                writeHeaders(requestAttributes.getResponse(), responseEntity);
+                asyncTransferService.transfer(request, fileRegion.getFile(),
+                        ImmutableList.of(new AsyncTransferService.Segment(new byte[0],
+                                fileRegion.getPosition(), fileRegion.getCount())),
+                        null, throttle);
+            } else if (body instanceof ByteBufferRegion) {
+                ByteBufferRegion region = (ByteBufferRegion) body;
+                writeHeaders(requestAttributes.getResponse(), responseEntity);
+                asyncTransferService.transfer(request, region.getContent(),
+                        ImmutableList.of(new AsyncTransferService.Segment(new byte[0],
+                                region.getPosition(), region.getCount())),
+                        null, throttle);
+            } else if (body instanceof StoredZipRegion) {
+                StoredZipRegion region = (StoredZipRegion) body;
+                writeHeaders(requestAttributes.getResponse(), responseEntity);
+                asyncTransferService.transfer(request,
+                        region.getLayout().slices(region.getPosition(), region.getCount())
+                                .stream()
+                                .map(slice -> new AsyncTransferService.Segment(
+                                        slice.getHeader(), slice.getFile(),
+                                        slice.getPosition(), slice.getCount()))
+                                .collect(Collectors.toList()),
+                        null, throttle);
+            } else {
+                MultipartFileRegion region = (MultipartFileRegion) body;
+                writeHeaders(requestAttributes.getResponse(), responseEntity);
+                asyncTransferService.transfer(request, region.getFile(),
+                        region.getParts().stream()
+                                .map(part -> new AsyncTransferService.Segment(
+                                        region.buildPartHeader(part),
+                                        part.getPosition(), part.getCount()))
+                                .collect(Collectors.toList()),
+                        region.buildClosingDelimiter(), throttle);
+            }
+            throttle = null;
+            return null;
+        } finally {
+            if (throttle != null) {
+                throttle.close();
+            }
+        }
+    }
+
+    private boolean isAsyncTransferable(Object body) {
+        return body instanceof FileRegion && ((FileRegion) body).getCount() > 0 ||
+                body instanceof ByteBufferRegion && ((ByteBufferRegion) body).getCount() > 0 ||
+                body instanceof StoredZipRegion && ((StoredZipRegion) body).getCount() > 0 ||
+                body instanceof MultipartFileRegion;
+    }
+
+    private void writeHeaders(HttpServletResponse response, ResponseEntity<?> responseEntity) {
+        response.setStatus(responseEntity.getStatusCodeValue());
+        responseEntity.getHeaders().forEach((name, values) ->
+                values.forEach(value -> response.addHeader(name, value)));
+    }
+
+    private ResponseEntity<?> buildFileResponse(Path file) {
+        ServletRequestAttributes requestAttributes =
+                (ServletRequestAttributes) RequestContextHolder.currentRequestAttributes();
+        HttpServletRequest request = requestAttributes.getRequest();
+
+        BasicFileAttributes fileAttributes = extractFileAttributes(file);
+        long fileSize = fileAttributes.size();
+        long lastModified = fileAttributes.lastModifiedTime().toMillis();
+        String contentType = contentTypeService.contentTypeOf(file, lastModified);
+        Optional<CompressionService.Variant> variantOptional =
+                request.getHeader(HttpHeaders.RANGE) == null ?
+                        compressionService.findVariant(file, fileAttributes, contentType,
+                                request.getHeader(HttpHeaders.ACCEPT_ENCODING)) :
+                        Optional.empty();
+        Optional<String> encoding = variantOptional.map(CompressionService.Variant::getEncoding);
+        String eTag = selectETag(request, buildETag(fileSize, lastModified, encoding),
+                contentDigestService.knownDigest(file, fileSize, lastModified)
+                        .map(digest -> buildETag(digest, encoding)));
+        HttpServletResponse response = requestAttributes.getResponse();
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL_REVALIDATE);
+        if (compressionService.isEnabled()) {
+            response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        if (new ServletWebRequest(request, response).checkNotModified(eTag, lastModified)) {
+            return null;
+        }
 
-    ResponseEntity<?> downloadFile(Path file) {
         HttpHeaders headers = new HttpHeaders();
-        headers.set(HttpHeaders.CONTENT_TYPE, extractContentTypeForFile(file));
         headers.set(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=" +
                 file.getFileName().toString());
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
 
-        long fileSize = extractFileSize(file);
+        if (variantOptional.isPresent()) {
+            CompressionService.Variant variant = variantOptional.get();
+            headers.set(HttpHeaders.CONTENT_TYPE, contentType);
+            headers.set(HttpHeaders.CONTENT_ENCODING, variant.getEncoding());
+            if (!variant.isAvailable()) {
+                return new ResponseEntity<>(new CompressingFileRegion(file, variant.getFile()),
+                        headers, HttpStatus.OK);
+            }
+            headers.setContentLength(variant.getSize());
+            return new ResponseEntity<>(buildBody(variant.getFile(), variant.getSize(),
+                    variant.getLastModified(), 0L, variant.getSize()), headers, HttpStatus.OK);
+        }
 
-        Optional<ByteRangeSpec> byteRangeSpecOptional = extractByteRangeSpec(fileSize);
+        Optional<ByteRangeSpec> byteRangeSpecOptional =
+                isRangeApplicable(request, eTag, lastModified) ?
+                        extractByteRangeSpec(request, fileSize) : Optional.empty();
         if (byteRangeSpecOptional.isPresent()) {
             ByteRangeSpec byteRangeSpec = byteRangeSpecOptional.get();
-            long numberOfBytes = byteRangeSpec.buildContentLengthHeader();
-            headers.setContentLength(numberOfBytes);
-            headers.set(HttpHeaders.CONTENT_RANGE, byteRangeSpec.buildContentRangeHeader());
-
-            try {
-                RandomAccessFile randomAccessFile = new RandomAccessFile(file.toFile(), "r");
-                FileChannel channel = randomAccessFile.getChannel()
-                        .position(byteRangeSpec.getStart());
-                InputStream partialInputStream =
-                        ByteStreams.limit(Channels.newInputStream(channel), numberOfBytes);
+            if (byteRangeSpec.isSingleRange()) {
+                ByteRangeSpec.ByteRange range = byteRangeSpec.getRanges().get(0);
+                headers.set(HttpHeaders.CONTENT_TYPE, contentType);
+                headers.setContentLength(range.getLength());
+                headers.set(HttpHeaders.CONTENT_RANGE,
+                        byteRangeSpec.buildContentRangeHeader(range));
                 return new ResponseEntity<>(
-                        new InputStreamResource(new BufferedInputStream(partialInputStream)),
+                        buildBody(file, fileSize, lastModified, range.getStart(),
+                                range.getLength()),
                         headers,
                         HttpStatus.PARTIAL_CONTENT);
-            } catch (Exception e) {
-                throw new UnknownException("Should never happen!");
             }
+
+            MultipartFileRegion multipartFileRegion = new MultipartFileRegion(file, contentType,
+                    MimeTypeUtils.generateMultipartBoundaryString(),
+                    byteRangeSpec.getRanges().stream()
+                            .map(range -> new MultipartFileRegion.Part(range.getStart(),
+                                    range.getLength(),
+                                    byteRangeSpec.buildContentRangeHeader(range)))
+                            .collect(Collectors.toList()));
+            headers.set(HttpHeaders.CONTENT_TYPE, MULTIPART_BYTERANGES_VALUE +
+                    "; boundary=" + multipartFileRegion.getBoundary());
+            headers.setContentLength(multipartFileRegion.getContentLength());
+            return new ResponseEntity<>(multipartFileRegion, headers, HttpStatus.PARTIAL_CONTENT);
         }
 
+        headers.set(HttpHeaders.CONTENT_TYPE, contentType);
         headers.setContentLength(fileSize);
 
-        return new ResponseEntity<>(new FileSystemResource(file.toFile()), headers, HttpStatus.OK);
+        return new ResponseEntity<>(buildBody(file, fileSize, lastModified, 0L, fileSize),
+                headers, HttpStatus.OK);
     }
 
-    private String extractContentTypeForFile(Path file) {
-        String contentType;
+    private Object buildBody(Path file, long size, long lastModified, long position, long count) {
+        return hotFileCache.get(file, size, lastModified)
+                .<Object>map(content -> new ByteBufferRegion(content, position, count))
+                .orElseGet(() -> new FileRegion(file, position, count));
+    }
+
+    private BasicFileAttributes extractFileAttributes(Path file) {
+        BasicFileAttributes fileAttributes;
         try {
-            String probedContentType = Files.probeContentType(file);
-            contentType = probedContentType != null ? probedContentType :
-                    MediaType.APPLICATION_OCTET_STREAM_VALUE;
+            fileAttributes = Files.readAttributes(file, BasicFileAttributes.class);
         } catch (IOException e) {
-            contentType = MediaType.APPLICATION_OCTET_STREAM_VALUE;
+            throw new UnknownException("Failed to read file attributes: " +
+                    file.toAbsolutePath());
         }
 
-        return contentType;
+        return fileAttributes;
     }
 
-    private long extractFileSize(Path file) {
-        long fileSize;
-        try {
-            fileSize = Files.size(file);
-        } catch (IOException e) {
-            throw new UnknownException("Failed to determine file size: " + file.toAbsolutePath());
+    private String buildETag(long fileSize, long lastModified, Optional<String> encoding) {
+        return "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(fileSize) +
+                encoding.map(value -> "-" + value).orElse("") + "\"";
+    }
+
+    private String buildETag(ContentDigest digest, Optional<String> encoding) {
+        return "\"sha256-" + digest.getSha256Hex() +
+                encoding.map(value -> "-" + value).orElse("") + "\"";
+    }
+
+    // clients holding the size and mtime based tag from before the digest was known still
+    // refer to the same content, so they keep validating against it
+    private String selectETag(HttpServletRequest request,
+                              String fileETag,
+                              Optional<String> digestETag) {
+        if (!digestETag.isPresent()) {
+            return fileETag;
+        }
+
+        String ifNoneMatchHeader = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        String ifRangeHeader = request.getHeader(HttpHeaders.IF_RANGE);
+        boolean knowsFileETag = ifNoneMatchHeader != null && ifNoneMatchHeader.contains(fileETag)
+                || fileETag.equals(ifRangeHeader);
+        return knowsFileETag ? fileETag : digestETag.get();
+    }
+
+    boolean isRangeApplicable(HttpServletRequest request,
+                                      String eTag,
+                                      long lastModified) {
+        String ifRangeHeader = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRangeHeader == null) {
+            return true;
+        }
+        if (ifRangeHeader.startsWith("\"") || ifRangeHeader.startsWith("W/")) {
+            return ifRangeHeader.equals(eTag);
         }
 
-        return fileSize;
+        try {
+            return request.getDateHeader(HttpHeaders.IF_RANGE) == lastModified / 1000 * 1000;
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid If-Range header: {}", ifRangeHeader);
+            return false;
+        }
     }
 
-    private Optional<ByteRangeSpec> extractByteRangeSpec(long contentLength) {
-        HttpServletRequest request = ((ServletRequestAttributes) RequestContextHolder
-                .currentRequestAttributes()).getRequest();
+    Optional<ByteRangeSpec> extractByteRangeSpec(HttpServletRequest request,
+                                                 long contentLength) {
         String rangeHeader = request.getHeader(HttpHeaders.RANGE);
         if (rangeHeader != null) {
             try {
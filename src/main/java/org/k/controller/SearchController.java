@@ -0,0 +1,47 @@
+package org.k.controller;
+
+import org.apache.commons.lang3.StringUtils;
+import org.k.dto.SearchHitDto;
+import org.k.exception.InvalidSearchQueryException;
+import org.k.service.SearchService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+@RestController
+public class SearchController {
+    private static final int DEFAULT_LIMIT = 100;
+
+    private final SearchService searchService;
+    private final int maxSearchResults;
+
+    @Autowired
+    public SearchController(SearchService searchService,
+                            @Value("${search.max.results}") int maxSearchResults) {
+        this.searchService = searchService;
+        this.maxSearchResults = maxSearchResults;
+    }
+
+    @GetMapping(value = "/search", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public List<SearchHitDto> search(@RequestParam("q") String query,
+                                     @RequestParam(value = "limit", required = false)
+                                             Integer limit) {
+        if (StringUtils.isBlank(query)) {
+            throw new InvalidSearchQueryException("Empty search query");
+        }
+        if (limit != null && limit <= 0) {
+            throw new InvalidSearchQueryException("Invalid search limit: " + limit);
+        }
+
+        int resultLimit = Math.min(limit != null ? limit : DEFAULT_LIMIT, maxSearchResults);
+        return searchService.search(query.trim(), resultLimit).stream()
+                .map(SearchHitDto::new)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,72 @@
+package org.k.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.k.dto.PathInfoDto;
+import org.k.exception.DirectoryNotFoundException;
+import org.k.exception.NotDirectoryException;
+import org.k.service.DirService;
+import org.k.service.TreeService;
+import org.k.util.PathUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+@RestController
+public class TreeController {
+    private static final String TREE = "/tree";
+
+    private final DirService dirService;
+    private final TreeService treeService;
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public TreeController(DirService dirService,
+                          TreeService treeService,
+                          ObjectMapper objectMapper) {
+        this.dirService = dirService;
+        this.treeService = treeService;
+        this.objectMapper = objectMapper;
+    }
+
+    @GetMapping(value = TREE + "/**", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public void listTreeOfDirectory(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    @RequestParam(value = "maxDepth", required = false)
+                                            Integer maxDepth) throws IOException {
+        String pathParameter = PathUtil.extractPath(TREE, request.getRequestURI()
+                .substring(request.getContextPath().length()));
+
+        Optional<Path> pathOptional = dirService.resolveFileOrDirectory(pathParameter);
+        if (!pathOptional.isPresent()) {
+            throw new DirectoryNotFoundException();
+        }
+
+        Path directory = pathOptional.get();
+        if (!Files.isDirectory(directory)) {
+            throw new NotDirectoryException();
+        }
+
+        int depth = maxDepth != null ? Math.max(1, maxDepth) : Integer.MAX_VALUE;
+        try (TreeService.TreeWalk walk = treeService.openWalk(pathParameter, depth)) {
+            response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+            JsonGenerator generator = objectMapper.getFactory()
+                    .createGenerator(response.getOutputStream());
+            generator.writeStartArray();
+            walk.forEach(pathInfo -> generator.writeObject(new PathInfoDto(pathInfo)));
+            generator.writeEndArray();
+            generator.flush();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package org.k.data;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Optional;
+
+public enum ArchiveFormat {
+    ZIP("zip", "application/zip"),
+    TAR("tar", "application/x-tar"),
+    TAR_GZ("tar.gz", "application/gzip"),
+    TAR_ZST("tar.zst", "application/zstd");
+
+    private final String extension;
+    private final String contentType;
+
+    ArchiveFormat(String extension, String contentType) {
+        this.extension = extension;
+        this.contentType = contentType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String stripExtension(String path) {
+        return path.substring(0, path.length() - extension.length() - 1);
+    }
+
+    public static Optional<ArchiveFormat> fromPath(String path) {
+        String lowerCasePath = path.toLowerCase(Locale.ENGLISH);
+        return Arrays.stream(values())
+                .filter(format -> lowerCasePath.endsWith("." + format.extension))
+                .findFirst();
+    }
+}
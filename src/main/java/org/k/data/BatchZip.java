@@ -0,0 +1,50 @@
+package org.k.data;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import java.nio.file.Path;
+import java.util.List;
+
+public class BatchZip {
+    private final List<Entry> entries;
+
+    public BatchZip(List<Entry> entries) {
+        this.entries = ImmutableList.copyOf(entries);
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public static class Entry {
+        private final String name;
+        private final Path file;
+        private final long size;
+        private final long lastModified;
+
+        public Entry(String name, Path file, long size, long lastModified) {
+            Preconditions.checkArgument(size >= 0);
+            this.name = Preconditions.checkNotNull(name);
+            this.file = Preconditions.checkNotNull(file);
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+    }
+}
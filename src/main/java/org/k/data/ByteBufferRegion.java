@@ -0,0 +1,32 @@
+package org.k.data;
+
+import com.google.common.base.Preconditions;
+
+import java.nio.ByteBuffer;
+
+public class ByteBufferRegion {
+    private final ByteBuffer content;
+    private final int position;
+    private final int count;
+
+    public ByteBufferRegion(ByteBuffer content, long position, long count) {
+        Preconditions.checkArgument(position >= 0);
+        Preconditions.checkArgument(count >= 0);
+        Preconditions.checkArgument(position + count <= content.limit());
+        this.content = content;
+        this.position = (int) position;
+        this.count = (int) count;
+    }
+
+    public ByteBuffer getContent() {
+        return content;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public int getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,23 @@
+package org.k.data;
+
+import com.google.common.base.Preconditions;
+
+import java.nio.file.Path;
+
+public class CompressingFileRegion {
+    private final Path file;
+    private final Path cacheFile;
+
+    public CompressingFileRegion(Path file, Path cacheFile) {
+        this.file = Preconditions.checkNotNull(file);
+        this.cacheFile = Preconditions.checkNotNull(cacheFile);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public Path getCacheFile() {
+        return cacheFile;
+    }
+}
@@ -0,0 +1,44 @@
+package org.k.data;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.BaseEncoding;
+
+public class ContentDigest {
+    private final long size;
+    private final long lastModified;
+    private final byte[] sha256;
+    private final long crc32;
+
+    public ContentDigest(long size, long lastModified, byte[] sha256, long crc32) {
+        Preconditions.checkArgument(size >= 0);
+        Preconditions.checkArgument(Preconditions.checkNotNull(sha256).length == 32);
+        this.size = size;
+        this.lastModified = lastModified;
+        this.sha256 = sha256.clone();
+        this.crc32 = crc32;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public byte[] getSha256() {
+        return sha256.clone();
+    }
+
+    public String getSha256Hex() {
+        return BaseEncoding.base16().lowerCase().encode(sha256);
+    }
+
+    public long getCrc32() {
+        return crc32;
+    }
+
+    public boolean matches(long size, long lastModified) {
+        return this.size == size && this.lastModified == lastModified;
+    }
+}
@@ -0,0 +1,25 @@
+package org.k.data;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import java.io.Serializable;
+import java.util.List;
+
+public class DirectoryListing implements Serializable {
+    private final List<PathInfo> pathInfos;
+    private final String digest;
+
+    public DirectoryListing(List<PathInfo> pathInfos, String digest) {
+        this.pathInfos = ImmutableList.copyOf(Preconditions.checkNotNull(pathInfos));
+        this.digest = Preconditions.checkNotNull(digest);
+    }
+
+    public List<PathInfo> getPathInfos() {
+        return pathInfos;
+    }
+
+    public String getDigest() {
+        return digest;
+    }
+}
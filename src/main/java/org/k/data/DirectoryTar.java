@@ -0,0 +1,24 @@
+package org.k.data;
+
+import com.google.common.base.Preconditions;
+
+import java.nio.file.Path;
+
+public class DirectoryTar {
+    private final Path directory;
+    private final ArchiveFormat format;
+
+    public DirectoryTar(Path directory, ArchiveFormat format) {
+        Preconditions.checkArgument(format != ArchiveFormat.ZIP);
+        this.directory = Preconditions.checkNotNull(directory);
+        this.format = Preconditions.checkNotNull(format);
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public ArchiveFormat getFormat() {
+        return format;
+    }
+}
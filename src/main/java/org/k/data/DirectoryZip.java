@@ -0,0 +1,23 @@
+package org.k.data;
+
+import com.google.common.base.Preconditions;
+
+import java.nio.file.Path;
+
+public class DirectoryZip {
+    private final Path directory;
+    private final Path cacheFile;
+
+    public DirectoryZip(Path directory, Path cacheFile) {
+        this.directory = Preconditions.checkNotNull(directory);
+        this.cacheFile = Preconditions.checkNotNull(cacheFile);
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public Path getCacheFile() {
+        return cacheFile;
+    }
+}
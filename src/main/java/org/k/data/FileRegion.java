@@ -0,0 +1,31 @@
+package org.k.data;
+
+import com.google.common.base.Preconditions;
+
+import java.nio.file.Path;
+
+public class FileRegion {
+    private final Path file;
+    private final long position;
+    private final long count;
+
+    public FileRegion(Path file, long position, long count) {
+        Preconditions.checkArgument(position >= 0);
+        Preconditions.checkArgument(count >= 0);
+        this.file = Preconditions.checkNotNull(file);
+        this.position = position;
+        this.count = count;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    public long getCount() {
+        return count;
+    }
+}
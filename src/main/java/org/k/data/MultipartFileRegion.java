@@ -0,0 +1,82 @@
+package org.k.data;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+public class MultipartFileRegion {
+    private static final String CRLF = "\r\n";
+
+    private final Path file;
+    private final String contentType;
+    private final String boundary;
+    private final List<Part> parts;
+
+    public MultipartFileRegion(Path file, String contentType, String boundary, List<Part> parts) {
+        Preconditions.checkArgument(!parts.isEmpty());
+        this.file = Preconditions.checkNotNull(file);
+        this.contentType = Preconditions.checkNotNull(contentType);
+        this.boundary = Preconditions.checkNotNull(boundary);
+        this.parts = ImmutableList.copyOf(parts);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public String getBoundary() {
+        return boundary;
+    }
+
+    public List<Part> getParts() {
+        return parts;
+    }
+
+    public byte[] buildPartHeader(Part part) {
+        return (CRLF + "--" + boundary + CRLF +
+                "Content-Type: " + contentType + CRLF +
+                "Content-Range: " + part.getContentRange() + CRLF +
+                CRLF).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    public byte[] buildClosingDelimiter() {
+        return (CRLF + "--" + boundary + "--" + CRLF).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    public long getContentLength() {
+        long contentLength = buildClosingDelimiter().length;
+        for (Part part : parts) {
+            contentLength += buildPartHeader(part).length + part.getCount();
+        }
+        return contentLength;
+    }
+
+    public static class Part {
+        private final long position;
+        private final long count;
+        private final String contentRange;
+
+        public Part(long position, long count, String contentRange) {
+            Preconditions.checkArgument(position >= 0);
+            Preconditions.checkArgument(count > 0);
+            this.position = position;
+            this.count = count;
+            this.contentRange = Preconditions.checkNotNull(contentRange);
+        }
+
+        public long getPosition() {
+            return position;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public String getContentRange() {
+            return contentRange;
+        }
+    }
+}
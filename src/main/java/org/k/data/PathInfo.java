@@ -1,14 +1,27 @@
 package org.k.data;
 
-public class PathInfo {
+import java.io.Serializable;
+
+public class PathInfo implements Serializable {
     private String path;
     private PathType type;
     private boolean extractionSupported;
+    private long size;
+    private long lastModified;
+    private String contentType;
 
-    public PathInfo(String path, PathType type, boolean extractionSupported) {
+    public PathInfo(String path,
+                    PathType type,
+                    boolean extractionSupported,
+                    long size,
+                    long lastModified,
+                    String contentType) {
         this.path = path;
         this.type = type;
         this.extractionSupported = extractionSupported;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.contentType = contentType;
     }
 
     public String getPath() {
@@ -23,6 +36,18 @@ public class PathInfo {
         return extractionSupported;
     }
 
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -45,6 +70,8 @@ public class PathInfo {
         return "PathInfo{" +
                 "path='" + path + '\'' +
                 ", type=" + type +
+                ", size=" + size +
+                ", lastModified=" + lastModified +
                 '}';
     }
 }
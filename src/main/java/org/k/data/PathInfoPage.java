@@ -0,0 +1,24 @@
+package org.k.data;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+public class PathInfoPage {
+    private final List<PathInfo> pathInfos;
+    private final boolean hasMore;
+
+    public PathInfoPage(List<PathInfo> pathInfos, boolean hasMore) {
+        this.pathInfos = ImmutableList.copyOf(Preconditions.checkNotNull(pathInfos));
+        this.hasMore = hasMore;
+    }
+
+    public List<PathInfo> getPathInfos() {
+        return pathInfos;
+    }
+
+    public boolean hasMore() {
+        return hasMore;
+    }
+}
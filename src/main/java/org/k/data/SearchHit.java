@@ -0,0 +1,21 @@
+package org.k.data;
+
+import com.google.common.base.Preconditions;
+
+public class SearchHit {
+    private final String path;
+    private final PathType type;
+
+    public SearchHit(String path, PathType type) {
+        this.path = Preconditions.checkNotNull(path);
+        this.type = Preconditions.checkNotNull(type);
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public PathType getType() {
+        return type;
+    }
+}
@@ -0,0 +1,31 @@
+package org.k.data;
+
+import com.google.common.base.Preconditions;
+
+import org.k.util.StoredZipLayout;
+
+public class StoredZipRegion {
+    private final StoredZipLayout layout;
+    private final long position;
+    private final long count;
+
+    public StoredZipRegion(StoredZipLayout layout, long position, long count) {
+        Preconditions.checkArgument(position >= 0);
+        Preconditions.checkArgument(count >= 0);
+        this.layout = Preconditions.checkNotNull(layout);
+        this.position = position;
+        this.count = count;
+    }
+
+    public StoredZipLayout getLayout() {
+        return layout;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    public long getCount() {
+        return count;
+    }
+}
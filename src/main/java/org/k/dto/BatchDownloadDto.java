@@ -0,0 +1,19 @@
+package org.k.dto;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+public class BatchDownloadDto {
+    private final List<String> paths;
+
+    @JsonCreator
+    public BatchDownloadDto(@JsonProperty("paths") List<String> paths) {
+        this.paths = paths;
+    }
+
+    public List<String> getPaths() {
+        return paths;
+    }
+}
@@ -0,0 +1,28 @@
+package org.k.dto;
+
+import com.google.common.base.Preconditions;
+
+public class ContentDigestDto {
+    private final String path;
+    private final long size;
+    private final String sha256;
+
+    public ContentDigestDto(String path, long size, String sha256) {
+        this.path = Preconditions.checkNotNull(path);
+        Preconditions.checkArgument(size >= 0);
+        this.size = size;
+        this.sha256 = Preconditions.checkNotNull(sha256);
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public String getSha256() {
+        return sha256;
+    }
+}
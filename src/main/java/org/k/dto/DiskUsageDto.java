@@ -0,0 +1,22 @@
+package org.k.dto;
+
+import com.google.common.base.Preconditions;
+
+public class DiskUsageDto {
+    private final String path;
+    private final long size;
+
+    public DiskUsageDto(String path, long size) {
+        this.path = Preconditions.checkNotNull(path);
+        Preconditions.checkArgument(size >= 0);
+        this.size = size;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public long getSize() {
+        return size;
+    }
+}
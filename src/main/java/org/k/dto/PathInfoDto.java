@@ -7,6 +7,9 @@ public class PathInfoDto {
     private String path;
     private PathTypeDto type;
     private boolean extractionSupported;
+    private long size;
+    private long lastModified;
+    private String contentType;
 
     public PathInfoDto() {
     }
@@ -15,6 +18,9 @@ public class PathInfoDto {
         this.path = pathInfo.getPath();
         this.type = PathTypeDto.fromPathType(pathInfo.getType());
         this.extractionSupported = pathInfo.isExtractionSupported();
+        this.size = pathInfo.getSize();
+        this.lastModified = pathInfo.getLastModified();
+        this.contentType = pathInfo.getContentType();
     }
 
     public String getPath() {
@@ -29,6 +35,18 @@ public class PathInfoDto {
         return extractionSupported;
     }
 
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -52,6 +70,9 @@ public class PathInfoDto {
         return "PathInfoDto{" +
                 "path='" + path + '\'' +
                 ", type=" + type +
+                ", size=" + size +
+                ", lastModified=" + lastModified +
+                ", contentType='" + contentType + '\'' +
                 '}';
     }
 }
\ No newline at end of file
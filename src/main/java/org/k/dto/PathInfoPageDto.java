@@ -0,0 +1,25 @@
+package org.k.dto;
+
+import java.util.List;
+
+@SuppressWarnings("unused")
+public class PathInfoPageDto {
+    private List<PathInfoDto> items;
+    private String nextCursor;
+
+    public PathInfoPageDto() {
+    }
+
+    public PathInfoPageDto(List<PathInfoDto> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<PathInfoDto> getItems() {
+        return items;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
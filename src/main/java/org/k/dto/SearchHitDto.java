@@ -0,0 +1,25 @@
+package org.k.dto;
+
+import org.k.data.SearchHit;
+
+@SuppressWarnings("unused")
+public class SearchHitDto {
+    private String path;
+    private PathTypeDto type;
+
+    public SearchHitDto() {
+    }
+
+    public SearchHitDto(SearchHit searchHit) {
+        this.path = searchHit.getPath();
+        this.type = PathTypeDto.fromPathType(searchHit.getType());
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public PathTypeDto getType() {
+        return type;
+    }
+}
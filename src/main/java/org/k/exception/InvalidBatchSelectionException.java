@@ -0,0 +1,7 @@
+package org.k.exception;
+
+public class InvalidBatchSelectionException extends RuntimeException {
+    public InvalidBatchSelectionException(String message) {
+        super(message);
+    }
+}
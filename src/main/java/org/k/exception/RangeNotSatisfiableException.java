@@ -1,7 +1,14 @@
 package org.k.exception;
 
 public class RangeNotSatisfiableException extends RuntimeException {
-    public RangeNotSatisfiableException(String range) {
+    private final long contentSizeInBytes;
+
+    public RangeNotSatisfiableException(String range, long contentSizeInBytes) {
         super("Range not satisfiable: " + range);
+        this.contentSizeInBytes = contentSizeInBytes;
+    }
+
+    public long getContentSizeInBytes() {
+        return contentSizeInBytes;
     }
 }
@@ -0,0 +1,7 @@
+package org.k.exception;
+
+public class SearchIndexNotReadyException extends RuntimeException {
+    public SearchIndexNotReadyException(String message) {
+        super(message);
+    }
+}
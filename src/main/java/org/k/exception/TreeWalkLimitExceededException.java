@@ -0,0 +1,7 @@
+package org.k.exception;
+
+public class TreeWalkLimitExceededException extends RuntimeException {
+    public TreeWalkLimitExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,379 @@
+package org.k.service;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+
+@Service
+public class AsyncTransferService {
+    private static final Logger logger = LoggerFactory.getLogger(AsyncTransferService.class);
+
+    private final boolean downloadAsyncEnabled;
+    private final int downloadAsyncBufferSize;
+    private final ExecutorService ioExecutor;
+    private final ScheduledExecutorService throttleExecutor =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("dirlist-download-throttle-%d").setDaemon(true).build());
+
+    @Autowired
+    public AsyncTransferService(@Value("${download.async.enabled}") boolean downloadAsyncEnabled,
+                                @Value("${download.async.io.threads}") int downloadAsyncIoThreads,
+                                @Value("${download.async.buffer.size}")
+                                        int downloadAsyncBufferSize) {
+        Preconditions.checkArgument(downloadAsyncIoThreads > 0,
+                "Download async IO threads should be bigger than 0!");
+        Preconditions.checkArgument(downloadAsyncBufferSize > 0,
+                "Download async buffer size should be bigger than 0!");
+        this.downloadAsyncEnabled = downloadAsyncEnabled;
+        this.downloadAsyncBufferSize = downloadAsyncBufferSize;
+        this.ioExecutor = Executors.newFixedThreadPool(downloadAsyncIoThreads,
+                new ThreadFactoryBuilder()
+                        .setNameFormat("dirlist-download-io-%d").setDaemon(true).build());
+    }
+
+    @PreDestroy
+    protected void preDestroy() {
+        throttleExecutor.shutdownNow();
+        ioExecutor.shutdownNow();
+    }
+
+    public boolean isAsyncSupported(HttpServletRequest request) {
+        return downloadAsyncEnabled && request != null && request.isAsyncSupported();
+    }
+
+    public void transfer(HttpServletRequest request,
+                         Path file,
+                         List<Segment> segments,
+                         byte[] trailer,
+                         BandwidthService.Throttle throttle) throws IOException {
+        AsynchronousFileChannel channel = openChannel(file);
+        try {
+            start(request, file, channel, null, segments, trailer, throttle);
+        } catch (RuntimeException | IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public void transfer(HttpServletRequest request,
+                         ByteBuffer content,
+                         List<Segment> segments,
+                         byte[] trailer,
+                         BandwidthService.Throttle throttle) throws IOException {
+        start(request, null, null, content, segments, trailer, throttle);
+    }
+
+    // every segment names the file its region is read from
+    public void transfer(HttpServletRequest request,
+                         List<Segment> segments,
+                         byte[] trailer,
+                         BandwidthService.Throttle throttle) throws IOException {
+        start(request, null, null, null, segments, trailer, throttle);
+    }
+
+    private void start(HttpServletRequest request,
+                       Path file,
+                       AsynchronousFileChannel channel,
+                       ByteBuffer content,
+                       List<Segment> segments,
+                       byte[] trailer,
+                       BandwidthService.Throttle throttle) throws IOException {
+        AsyncContext asyncContext = request.startAsync();
+        asyncContext.setTimeout(0L);
+        Transfer transfer = new Transfer(asyncContext,
+                asyncContext.getResponse().getOutputStream(),
+                file, channel, content, segments.iterator(), trailer, throttle);
+        asyncContext.addListener(transfer);
+        transfer.output.setWriteListener(transfer);
+    }
+
+    private AsynchronousFileChannel openChannel(Path file) throws IOException {
+        return AsynchronousFileChannel.open(file, ImmutableSet.of(StandardOpenOption.READ),
+                ioExecutor);
+    }
+
+    public static class Segment {
+        private final byte[] header;
+        private final Path file;
+        private final long position;
+        private final long count;
+
+        public Segment(byte[] header, long position, long count) {
+            this(header, null, position, count);
+        }
+
+        // without a file the region is read from the transfer's own file or content
+        public Segment(byte[] header, Path file, long position, long count) {
+            Preconditions.checkArgument(position >= 0);
+            Preconditions.checkArgument(count >= 0);
+            this.header = Preconditions.checkNotNull(header);
+            this.file = file;
+            this.position = position;
+            this.count = count;
+        }
+    }
+
+    private class Transfer implements WriteListener, AsyncListener,
+            CompletionHandler<Integer, Void> {
+        private final AsyncContext asyncContext;
+        private final ServletOutputStream output;
+        private final ByteBuffer content;
+        private final Iterator<Segment> segments;
+        private final BandwidthService.Throttle throttle;
+        private final ByteBuffer buffer = ByteBuffer.allocate(downloadAsyncBufferSize);
+
+        private Path file;
+        private AsynchronousFileChannel channel;
+        private byte[] trailer;
+        private byte[] bytes;
+        private int bytesOffset;
+        private long position;
+        private long remaining;
+        private boolean writePending;
+        private boolean readPending;
+        private boolean finished;
+
+        private Transfer(AsyncContext asyncContext,
+                         ServletOutputStream output,
+                         Path file,
+                         AsynchronousFileChannel channel,
+                         ByteBuffer content,
+                         Iterator<Segment> segments,
+                         byte[] trailer,
+                         BandwidthService.Throttle throttle) {
+            this.asyncContext = asyncContext;
+            this.output = output;
+            this.file = file;
+            this.channel = channel;
+            this.content = content;
+            this.segments = segments;
+            this.trailer = trailer;
+            this.throttle = throttle;
+        }
+
+        @Override
+        public synchronized void onWritePossible() {
+            try {
+                while (!finished) {
+                    if (writePending) {
+                        if (!output.isReady()) {
+                            return;
+                        }
+                        output.write(buffer.array(), buffer.position(), buffer.remaining());
+                        buffer.clear();
+                        writePending = false;
+                    } else if (readPending) {
+                        return;
+                    } else if (!fillBuffer()) {
+                        if (output.isReady()) {
+                            finish();
+                        }
+                        return;
+                    }
+                }
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        // headers are copied in as much as fits, so a record may be bigger than the buffer
+        private boolean fillBuffer() throws IOException {
+            while (true) {
+                if (bytes != null) {
+                    int length = Math.min(buffer.remaining(), bytes.length - bytesOffset);
+                    buffer.put(bytes, bytesOffset, length);
+                    bytesOffset += length;
+                    if (bytesOffset < bytes.length) {
+                        return flipBuffer();
+                    }
+                    bytes = null;
+                    continue;
+                }
+
+                if (remaining > 0) {
+                    if (!buffer.hasRemaining()) {
+                        return flipBuffer();
+                    }
+                    int length = (int) Math.min(buffer.remaining(), remaining);
+                    buffer.limit(buffer.position() + length);
+                    readPending = true;
+                    long waitNanos = throttle.reserveNanos(length);
+                    if (waitNanos > 0) {
+                        throttleExecutor.schedule(this::read, waitNanos, TimeUnit.NANOSECONDS);
+                    } else if (content != null) {
+                        readCompleted(copyContent());
+                    } else {
+                        read();
+                    }
+                    return true;
+                }
+
+                if (segments.hasNext()) {
+                    Segment segment = segments.next();
+                    if (segment.file != null && segment.count > 0 &&
+                            !segment.file.equals(file)) {
+                        closeChannel();
+                        channel = openChannel(segment.file);
+                        file = segment.file;
+                    }
+                    bytes = segment.header;
+                    position = segment.position;
+                    remaining = segment.count;
+                } else if (trailer != null) {
+                    bytes = trailer;
+                    trailer = null;
+                } else {
+                    return buffer.position() > 0 && flipBuffer();
+                }
+                bytesOffset = 0;
+            }
+        }
+
+        private boolean flipBuffer() {
+            buffer.flip();
+            writePending = true;
+            return true;
+        }
+
+        private void read() {
+            if (content != null) {
+                completed(copyContent(), null);
+                return;
+            }
+
+            try {
+                channel.read(buffer, position, null, this);
+            } catch (RuntimeException e) {
+                failed(e, null);
+            }
+        }
+
+        private int copyContent() {
+            ByteBuffer source = content.duplicate();
+            source.position((int) position);
+            source.limit((int) position + buffer.remaining());
+            int length = source.remaining();
+            buffer.put(source);
+            return length;
+        }
+
+        @Override
+        public synchronized void completed(Integer read, Void attachment) {
+            if (finished) {
+                return;
+            }
+            if (read < 0) {
+                fail(new EOFException("Unexpected end of file at position " + position));
+                return;
+            }
+
+            if (readCompleted(read)) {
+                onWritePossible();
+            }
+        }
+
+        private boolean readCompleted(int read) {
+            position += read;
+            remaining -= read;
+            if (buffer.hasRemaining()) {
+                read();
+                return false;
+            }
+
+            buffer.limit(buffer.capacity());
+            readPending = false;
+            if (!buffer.hasRemaining() || remaining == 0) {
+                flipBuffer();
+            }
+            return true;
+        }
+
+        @Override
+        public synchronized void failed(Throwable e, Void attachment) {
+            fail(e);
+        }
+
+        @Override
+        public synchronized void onError(Throwable e) {
+            fail(e);
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public synchronized void onTimeout(AsyncEvent event) {
+            fail(event.getThrowable());
+        }
+
+        @Override
+        public synchronized void onError(AsyncEvent event) {
+            fail(event.getThrowable());
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+
+        private void finish() {
+            finished = true;
+            release();
+            asyncContext.complete();
+        }
+
+        private void fail(Throwable e) {
+            if (finished) {
+                return;
+            }
+            logger.debug("Asynchronous download failed: {}", String.valueOf(e));
+            finish();
+        }
+
+        private void release() {
+            throttle.close();
+            closeChannel();
+        }
+
+        private synchronized void closeChannel() {
+            if (channel == null) {
+                return;
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close {}", file, e);
+            }
+            channel = null;
+        }
+    }
+}
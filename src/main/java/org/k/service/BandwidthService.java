@@ -0,0 +1,234 @@
+package org.k.service;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.k.user.UserInfo;
+import org.k.util.FairShare;
+import org.k.util.TokenBucket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+@Service
+public class BandwidthService {
+    private static final Logger logger = LoggerFactory.getLogger(BandwidthService.class);
+    private static final String ANONYMOUS_USERNAME = "anonymous";
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final long MIN_BUCKET_CAPACITY = 4L * CHUNK_SIZE;
+    private static final long BUCKET_CAPACITY_DIVISOR = 10L;
+    private static final double THROUGHPUT_SMOOTHING = 0.5;
+    private static final double SATURATION_RATIO = 0.9;
+    private static final double DEMAND_HEADROOM = 1.5;
+
+    private final PropertiesService propertiesService;
+    private final Map<String, UserBandwidth> users = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService samplingExecutor =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("dirlist-bandwidth-%d").setDaemon(true).build());
+
+    @Autowired
+    public BandwidthService(PropertiesService propertiesService) {
+        this.propertiesService = propertiesService;
+    }
+
+    @PostConstruct
+    protected void postConstruct() {
+        samplingExecutor.scheduleAtFixedRate(this::sampleThroughput, 1L, 1L, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    protected void preDestroy() {
+        samplingExecutor.shutdownNow();
+    }
+
+    public Throttle openThrottle(String username) {
+        String name = username != null ? username : ANONYMOUS_USERNAME;
+        UserBandwidth user;
+        synchronized (this) {
+            user = users.computeIfAbsent(name, this::createUserBandwidth);
+            user.streams++;
+            user.sampled = false;
+            rebalance();
+        }
+        return new Throttle(user);
+    }
+
+    public Map<String, Long> throughputByUser() {
+        ImmutableMap.Builder<String, Long> throughput = ImmutableMap.builder();
+        users.forEach((name, user) -> throughput.put(name, Math.round(user.bytesPerSecond)));
+        return throughput.build();
+    }
+
+    public long totalThroughput() {
+        return Math.round(users.values().stream().mapToDouble(user -> user.bytesPerSecond).sum());
+    }
+
+    public synchronized int activeStreamCount() {
+        return users.values().stream().mapToInt(user -> user.streams).sum();
+    }
+
+    private UserBandwidth createUserBandwidth(String username) {
+        long rateLimit = propertiesService.getUserInfo(username)
+                .map(UserInfo::getRole)
+                .map(propertiesService::downloadRateLimit)
+                .orElse(0L);
+        return new UserBandwidth(rateLimit > 0 ? rateLimit : Long.MAX_VALUE);
+    }
+
+    private synchronized void closeThrottle(UserBandwidth user) {
+        user.streams--;
+        rebalance();
+    }
+
+    private synchronized void rebalance() {
+        List<UserBandwidth> activeUsers = new ArrayList<>();
+        users.values().stream().filter(user -> user.streams > 0).forEach(activeUsers::add);
+
+        long globalRateLimit = propertiesService.globalDownloadRateLimit();
+        long[] allocations = globalRateLimit > 0 ?
+                FairShare.allocate(globalRateLimit, activeUsers.stream()
+                        .mapToLong(BandwidthService::demandOf).toArray()) :
+                activeUsers.stream().mapToLong(user -> user.rateLimit).toArray();
+
+        for (int i = 0; i < activeUsers.size(); i++) {
+            UserBandwidth user = activeUsers.get(i);
+            long allocation = Math.max(1L, allocations[i]);
+            long capacity = Math.max(MIN_BUCKET_CAPACITY, allocation / BUCKET_CAPACITY_DIVISOR);
+            user.allocation = allocation;
+            if (allocation == Long.MAX_VALUE) {
+                user.bucket = null;
+            } else if (user.bucket == null) {
+                user.bucket = new TokenBucket(allocation, capacity);
+            } else {
+                user.bucket.setRate(allocation, capacity);
+            }
+        }
+    }
+
+    // A user moving close to its allocation, or with a stream opened since the last sample,
+    // may want more than it gets. Any other user only needs what it moved over the last second
+    // plus some headroom, and the capacity it leaves goes to the others.
+    private static long demandOf(UserBandwidth user) {
+        if (!user.sampled || user.lastSecondBytes >= SATURATION_RATIO * user.allocation) {
+            return user.rateLimit;
+        }
+        return Math.min(user.rateLimit,
+                Math.max(MIN_BUCKET_CAPACITY, Math.round(user.lastSecondBytes * DEMAND_HEADROOM)));
+    }
+
+    private void sampleThroughput() {
+        try {
+            synchronized (this) {
+                users.values().removeIf(user -> {
+                    long bytes = user.transferredBytes.get();
+                    user.lastSecondBytes = bytes - user.sampledBytes;
+                    user.bytesPerSecond = THROUGHPUT_SMOOTHING * user.lastSecondBytes +
+                            (1 - THROUGHPUT_SMOOTHING) * user.bytesPerSecond;
+                    user.sampledBytes = bytes;
+                    user.sampled = true;
+                    return user.streams == 0 && user.bytesPerSecond < 1;
+                });
+                rebalance();
+            }
+        } catch (Exception e) {
+            logger.error("Failed to sample download throughput", e);
+        }
+    }
+
+    public class Throttle implements AutoCloseable {
+        private final UserBandwidth user;
+        private boolean closed;
+
+        private Throttle(UserBandwidth user) {
+            this.user = user;
+        }
+
+        public boolean isLimited() {
+            return user.bucket != null;
+        }
+
+        public long reserveNanos(long bytes) {
+            user.transferredBytes.addAndGet(bytes);
+            TokenBucket bucket = user.bucket;
+            return bucket != null ? bucket.reserveNanos(bytes) : 0L;
+        }
+
+        public void acquire(long bytes) throws IOException {
+            long waitNanos = reserveNanos(bytes);
+            if (waitNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while throttling a download");
+                }
+            }
+        }
+
+        public OutputStream wrap(OutputStream output) {
+            return new FilterOutputStream(output) {
+                @Override
+                public void write(int b) throws IOException {
+                    acquire(1L);
+                    out.write(b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    while (len > 0) {
+                        int chunk = Math.min(len, CHUNK_SIZE);
+                        acquire(chunk);
+                        out.write(b, off, chunk);
+                        off += chunk;
+                        len -= chunk;
+                    }
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+            synchronized (BandwidthService.this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                closeThrottle(user);
+            }
+        }
+    }
+
+    private static class UserBandwidth {
+        private final long rateLimit;
+        private final AtomicLong transferredBytes = new AtomicLong();
+        private int streams;
+        private long sampledBytes;
+        private long lastSecondBytes;
+        private boolean sampled;
+        private long allocation = Long.MAX_VALUE;
+        private volatile TokenBucket bucket;
+        private volatile double bytesPerSecond;
+
+        private UserBandwidth(long rateLimit) {
+            this.rateLimit = rateLimit;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package org.k.service;
+
+import com.hazelcast.core.HazelcastException;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.hazelcast.core.ITopic;
+
+import org.k.data.DirectoryListing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+@Service
+public class ClusterListingCache {
+    public static final String LISTING_CACHE_MAP = "listingCache";
+    private static final Logger logger = LoggerFactory.getLogger(ClusterListingCache.class);
+    private static final String INVALIDATION_TOPIC = "listingCacheInvalidations";
+    private static final long LOAD_LOCK_LEASE_SECONDS = 60L;
+
+    private final boolean clusterListingCacheEnabled;
+    private final long listingCacheRefreshSeconds;
+    private final IMap<String, DirectoryListing> listingMap;
+    private final ITopic<String> invalidationTopic;
+    private final AtomicLong sharedHits = new AtomicLong();
+    private final AtomicLong sharedLoads = new AtomicLong();
+
+    @Autowired
+    public ClusterListingCache(HazelcastInstance hazelcastInstance,
+                               @Value("${listing.cache.cluster.enabled}")
+                                       boolean clusterListingCacheEnabled,
+                               @Value("${listing.cache.refresh.seconds}")
+                                       long listingCacheRefreshSeconds) {
+        this.clusterListingCacheEnabled = clusterListingCacheEnabled;
+        this.listingCacheRefreshSeconds = listingCacheRefreshSeconds;
+        this.listingMap = clusterListingCacheEnabled ?
+                hazelcastInstance.getMap(LISTING_CACHE_MAP) : null;
+        this.invalidationTopic = clusterListingCacheEnabled ?
+                hazelcastInstance.getTopic(INVALIDATION_TOPIC) : null;
+    }
+
+    public DirectoryListing getOrLoad(String key, ListingLoader loader) throws IOException {
+        if (!clusterListingCacheEnabled) {
+            return loader.load();
+        }
+
+        try {
+            DirectoryListing listing = listingMap.get(key);
+            if (listing != null) {
+                sharedHits.incrementAndGet();
+                return listing;
+            }
+
+            listingMap.lock(key, LOAD_LOCK_LEASE_SECONDS, TimeUnit.SECONDS);
+            try {
+                listing = listingMap.get(key);
+                if (listing != null) {
+                    sharedHits.incrementAndGet();
+                    return listing;
+                }
+
+                listing = loader.load();
+                sharedLoads.incrementAndGet();
+                listingMap.set(key, listing, listingCacheRefreshSeconds, TimeUnit.SECONDS);
+                return listing;
+            } finally {
+                unlock(key);
+            }
+        } catch (HazelcastException e) {
+            logger.warn("Shared listing cache unavailable for [{}], listing locally: {}",
+                    key, e.getMessage());
+            return loader.load();
+        }
+    }
+
+    public void invalidate(String key) {
+        if (!clusterListingCacheEnabled) {
+            return;
+        }
+
+        try {
+            listingMap.delete(key);
+            invalidationTopic.publish(key);
+        } catch (HazelcastException e) {
+            logger.warn("Failed to broadcast listing invalidation for [{}]: {}",
+                    key, e.getMessage());
+        }
+    }
+
+    public void addInvalidationListener(Consumer<String> listener) {
+        if (clusterListingCacheEnabled) {
+            invalidationTopic.addMessageListener(message ->
+                    listener.accept(message.getMessageObject()));
+        }
+    }
+
+    public long sharedHitCount() {
+        return sharedHits.get();
+    }
+
+    public long sharedLoadCount() {
+        return sharedLoads.get();
+    }
+
+    // A load that outlives the lease finds the lock already released, and possibly taken by
+    // another node, so it is neither force unlocked nor allowed to discard the fresh listing.
+    private void unlock(String key) {
+        try {
+            listingMap.unlock(key);
+        } catch (IllegalMonitorStateException | HazelcastException e) {
+            logger.warn("Failed to release the listing load lock for [{}]: {}",
+                    key, e.getMessage());
+        }
+    }
+
+    @FunctionalInterface
+    public interface ListingLoader {
+        DirectoryListing load() throws IOException;
+    }
+}
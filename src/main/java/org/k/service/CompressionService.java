@@ -0,0 +1,286 @@
+package org.k.service;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
+
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.apache.commons.io.output.TeeOutputStream;
+import org.k.data.CompressingFileRegion;
+import org.k.util.AcceptEncoding;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.PostConstruct;
+
+@Service
+public class CompressionService {
+    public static final String GZIP_ENCODING = "gzip";
+    public static final String BROTLI_ENCODING = "br";
+    private static final Logger logger = LoggerFactory.getLogger(CompressionService.class);
+    private static final String CACHE_DIRECTORY_NAME = "compressed";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+    private static final String GZIP_EXTENSION = ".gz";
+    private static final String BROTLI_EXTENSION = ".br";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long EVICTION_GRACE_MILLIS = 60_000L;
+    private static final Set<String> COMPRESSIBLE_CONTENT_TYPES = ImmutableSet.of(
+            "application/javascript",
+            "application/json",
+            "application/xml",
+            "application/x-ndjson",
+            "application/x-sh",
+            "application/sql",
+            "image/svg+xml");
+
+    private final boolean compressionEnabled;
+    private final long compressionMinSizeBytes;
+    private final long compressionCacheMaxBytes;
+    private final Path cacheDirectory;
+    private final AtomicLong cacheBytes = new AtomicLong();
+    private final Object variantLock = new Object();
+
+    @Autowired
+    public CompressionService(@Value("${compression.enabled}") boolean compressionEnabled,
+                              @Value("${compression.min.size.bytes}")
+                                      long compressionMinSizeBytes,
+                              @Value("${compression.cache.max.bytes}")
+                                      long compressionCacheMaxBytes,
+                              @Value("${index.directory}") String indexDirectory) {
+        Preconditions.checkArgument(compressionCacheMaxBytes >= 0,
+                "Compression cache max bytes should not be negative!");
+        this.compressionEnabled = compressionEnabled;
+        this.compressionMinSizeBytes = compressionMinSizeBytes;
+        this.compressionCacheMaxBytes = compressionCacheMaxBytes;
+        this.cacheDirectory = Paths.get(indexDirectory, CACHE_DIRECTORY_NAME);
+    }
+
+    @PostConstruct
+    protected void postConstruct() throws IOException {
+        if (!compressionEnabled) {
+            return;
+        }
+
+        Files.createDirectories(cacheDirectory);
+        try (Stream<Path> files = Files.list(cacheDirectory)) {
+            Iterator<Path> iterator = files.iterator();
+            while (iterator.hasNext()) {
+                Path cacheFile = iterator.next();
+                if (cacheFile.getFileName().toString().endsWith(TEMP_FILE_SUFFIX)) {
+                    Files.deleteIfExists(cacheFile);
+                } else {
+                    cacheBytes.addAndGet(Files.size(cacheFile));
+                }
+            }
+        }
+        logger.info("Compressed variant cache at [{}] holds {} bytes",
+                cacheDirectory, cacheBytes.get());
+    }
+
+    public boolean isEnabled() {
+        return compressionEnabled;
+    }
+
+    public Optional<Variant> findVariant(Path file,
+                                         BasicFileAttributes fileAttributes,
+                                         String contentType,
+                                         String acceptEncodingHeader) {
+        if (!compressionEnabled || acceptEncodingHeader == null) {
+            return Optional.empty();
+        }
+
+        long lastModified = fileAttributes.lastModifiedTime().toMillis();
+        if (AcceptEncoding.accepts(acceptEncodingHeader, BROTLI_ENCODING)) {
+            Optional<Variant> sibling = findSibling(file, BROTLI_EXTENSION, BROTLI_ENCODING,
+                    lastModified);
+            if (sibling.isPresent()) {
+                return sibling;
+            }
+        }
+        if (!AcceptEncoding.accepts(acceptEncodingHeader, GZIP_ENCODING)) {
+            return Optional.empty();
+        }
+
+        Optional<Variant> sibling = findSibling(file, GZIP_EXTENSION, GZIP_ENCODING,
+                lastModified);
+        if (sibling.isPresent() || !isCompressible(contentType, fileAttributes.size())) {
+            return sibling;
+        }
+
+        Path cacheFile = cacheDirectory.resolve(buildCacheFileName(file, fileAttributes));
+        try {
+            long size;
+            synchronized (variantLock) {
+                Files.setLastModifiedTime(cacheFile, FileTime.from(Instant.now()));
+                size = Files.size(cacheFile);
+            }
+            return Optional.of(new Variant(GZIP_ENCODING, cacheFile, size, lastModified));
+        } catch (IOException e) {
+            return Optional.of(new Variant(GZIP_ENCODING, cacheFile, -1L, lastModified));
+        }
+    }
+
+    public void compress(CompressingFileRegion region, OutputStream output) throws IOException {
+        Path tempFile = Files.createTempFile(cacheDirectory,
+                region.getCacheFile().getFileName().toString(), TEMP_FILE_SUFFIX);
+        try {
+            try (OutputStream cacheOutput = Files.newOutputStream(tempFile);
+                 GZIPOutputStream gzipOutput = new GZIPOutputStream(new TeeOutputStream(
+                         new CloseShieldOutputStream(output), cacheOutput), BUFFER_SIZE)) {
+                Files.copy(region.getFile(), gzipOutput);
+            }
+            storeCacheFile(tempFile, region.getCacheFile());
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private Optional<Variant> findSibling(Path file,
+                                          String extension,
+                                          String encoding,
+                                          long lastModified) {
+        Path sibling = file.resolveSibling(file.getFileName().toString() + extension);
+        try {
+            BasicFileAttributes siblingAttributes =
+                    Files.readAttributes(sibling, BasicFileAttributes.class);
+            if (siblingAttributes.isRegularFile() &&
+                    siblingAttributes.lastModifiedTime().toMillis() >= lastModified) {
+                return Optional.of(new Variant(encoding, sibling, siblingAttributes.size(),
+                        siblingAttributes.lastModifiedTime().toMillis()));
+            }
+        } catch (IOException e) {
+            logger.trace("No {} sibling for {}", encoding, file);
+        }
+        return Optional.empty();
+    }
+
+    private boolean isCompressible(String contentType, long size) {
+        if (size < compressionMinSizeBytes || compressionCacheMaxBytes == 0) {
+            return false;
+        }
+        String mimeType = contentType.toLowerCase(Locale.ROOT);
+        return mimeType.startsWith("text/") || mimeType.endsWith("+json") ||
+                mimeType.endsWith("+xml") || COMPRESSIBLE_CONTENT_TYPES.contains(mimeType);
+    }
+
+    private String buildCacheFileName(Path file, BasicFileAttributes fileAttributes) {
+        return Hashing.sha256()
+                .hashString(file.toAbsolutePath().normalize().toString(), StandardCharsets.UTF_8)
+                + "-" + Long.toHexString(fileAttributes.lastModifiedTime().toMillis())
+                + "-" + Long.toHexString(fileAttributes.size()) + GZIP_EXTENSION;
+    }
+
+    // an atomic move replaces a variant stored by a concurrent first request, so the check and
+    // the move happen under the lock and only a move that creates the variant is counted
+    private void storeCacheFile(Path tempFile, Path cacheFile) throws IOException {
+        long size = Files.size(tempFile);
+        synchronized (variantLock) {
+            if (Files.exists(cacheFile)) {
+                return;
+            }
+            Files.move(tempFile, cacheFile, StandardCopyOption.ATOMIC_MOVE);
+        }
+        if (cacheBytes.addAndGet(size) > compressionCacheMaxBytes) {
+            evictLeastRecentlyUsed();
+        }
+    }
+
+    // A response opens its variant right after findVariant hands it out, and deleting an open
+    // file leaves the response reading it intact. So variants handed out within the grace
+    // period are kept, even if that leaves the cache over its size for a while.
+    private synchronized void evictLeastRecentlyUsed() throws IOException {
+        List<Path> cacheFiles;
+        try (Stream<Path> files = Files.list(cacheDirectory)) {
+            cacheFiles = files
+                    .filter(cacheFile -> !cacheFile.getFileName().toString()
+                            .endsWith(TEMP_FILE_SUFFIX))
+                    .sorted(Comparator.comparing(this::lastModifiedTime))
+                    .collect(Collectors.toList());
+        }
+
+        long handedOutSince = System.currentTimeMillis() - EVICTION_GRACE_MILLIS;
+        Iterator<Path> iterator = cacheFiles.iterator();
+        while (cacheBytes.get() > compressionCacheMaxBytes && iterator.hasNext()) {
+            Path cacheFile = iterator.next();
+            try {
+                synchronized (variantLock) {
+                    if (lastModifiedTime(cacheFile).toMillis() > handedOutSince) {
+                        break;
+                    }
+                    long size = Files.size(cacheFile);
+                    if (Files.deleteIfExists(cacheFile)) {
+                        cacheBytes.addAndGet(-size);
+                    }
+                }
+            } catch (IOException e) {
+                logger.warn("Failed to evict compressed variant {}", cacheFile, e);
+            }
+        }
+    }
+
+    private FileTime lastModifiedTime(Path cacheFile) {
+        try {
+            return Files.getLastModifiedTime(cacheFile);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0L);
+        }
+    }
+
+    public static class Variant {
+        private final String encoding;
+        private final Path file;
+        private final long size;
+        private final long lastModified;
+
+        private Variant(String encoding, Path file, long size, long lastModified) {
+            this.encoding = encoding;
+            this.file = file;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        public String getEncoding() {
+            return encoding;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        public boolean isAvailable() {
+            return size >= 0;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package org.k.service;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.k.data.ContentDigest;
+import org.k.util.PrefetchingDigest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+@Service
+public class ContentDigestService {
+    private static final Logger logger = LoggerFactory.getLogger(ContentDigestService.class);
+    private static final String INDEX_FILE_NAME = "content-digests.dat";
+    private static final int INDEX_FORMAT_VERSION = 2;
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final int DIGEST_LENGTH = 32;
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    private final DirService dirService;
+    private final int contentDigestReadAhead;
+    private final long contentDigestPersistSeconds;
+    private final Path indexFile;
+    private final Cache<Path, ContentDigest> digests;
+    private final Map<Path, CompletableFuture<ContentDigest>> pendingDigests =
+            new ConcurrentHashMap<>();
+    private final ExecutorService digestExecutor;
+    private final ExecutorService readExecutor;
+    private final ScheduledExecutorService storeExecutor =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("dirlist-digest-store-%d").setDaemon(true).build());
+
+    private volatile boolean dirty;
+
+    @Autowired
+    public ContentDigestService(DirService dirService,
+                                @Value("${content.digest.threads}") int contentDigestThreads,
+                                @Value("${content.digest.io.threads}")
+                                        int contentDigestIoThreads,
+                                @Value("${content.digest.read.ahead}") int contentDigestReadAhead,
+                                @Value("${content.digest.cache.max.entries}")
+                                        long contentDigestCacheMaxEntries,
+                                @Value("${content.digest.persist.seconds}")
+                                        long contentDigestPersistSeconds,
+                                @Value("${index.directory}") String indexDirectory) {
+        Preconditions.checkArgument(contentDigestThreads > 0,
+                "Content digest threads should be bigger than 0!");
+        Preconditions.checkArgument(contentDigestIoThreads > 0,
+                "Content digest IO threads should be bigger than 0!");
+        Preconditions.checkArgument(contentDigestReadAhead > 0,
+                "Content digest read ahead should be bigger than 0!");
+        Preconditions.checkArgument(contentDigestPersistSeconds > 0,
+                "Content digest persist seconds should be bigger than 0!");
+        this.dirService = dirService;
+        this.contentDigestReadAhead = contentDigestReadAhead;
+        this.contentDigestPersistSeconds = contentDigestPersistSeconds;
+        this.indexFile = Paths.get(indexDirectory, INDEX_FILE_NAME);
+        this.digests = CacheBuilder.newBuilder()
+                .maximumSize(contentDigestCacheMaxEntries)
+                .build();
+        this.digestExecutor = Executors.newFixedThreadPool(contentDigestThreads,
+                new ThreadFactoryBuilder()
+                        .setNameFormat("dirlist-digest-%d").setDaemon(true).build());
+        this.readExecutor = Executors.newFixedThreadPool(contentDigestIoThreads,
+                new ThreadFactoryBuilder()
+                        .setNameFormat("dirlist-digest-io-%d").setDaemon(true).build());
+    }
+
+    @PostConstruct
+    protected void postConstruct() {
+        storeExecutor.execute(this::load);
+        storeExecutor.scheduleWithFixedDelay(this::persistIfDirty,
+                contentDigestPersistSeconds, contentDigestPersistSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    protected void preDestroy() throws InterruptedException {
+        digestExecutor.shutdownNow();
+        readExecutor.shutdownNow();
+        storeExecutor.execute(this::persistIfDirty);
+        storeExecutor.shutdown();
+        if (!storeExecutor.awaitTermination(10L, TimeUnit.SECONDS)) {
+            storeExecutor.shutdownNow();
+        }
+    }
+
+    public Optional<ContentDigest> knownDigest(Path file, long size, long lastModified) {
+        Path key = file.toAbsolutePath().normalize();
+        ContentDigest digest = digests.getIfPresent(key);
+        if (digest == null) {
+            return Optional.empty();
+        }
+        if (!digest.matches(size, lastModified)) {
+            digests.asMap().remove(key, digest);
+            dirty = true;
+            return Optional.empty();
+        }
+        return Optional.of(digest);
+    }
+
+    public CompletableFuture<ContentDigest> digestOf(Path file,
+                                                     BasicFileAttributes fileAttributes) {
+        long size = fileAttributes.size();
+        long lastModified = fileAttributes.lastModifiedTime().toMillis();
+        Optional<ContentDigest> knownDigest = knownDigest(file, size, lastModified);
+        if (knownDigest.isPresent()) {
+            return CompletableFuture.completedFuture(knownDigest.get());
+        }
+
+        Path key = file.toAbsolutePath().normalize();
+        CompletableFuture<ContentDigest> digest = new CompletableFuture<>();
+        CompletableFuture<ContentDigest> pendingDigest = pendingDigests.putIfAbsent(key, digest);
+        if (pendingDigest != null) {
+            return pendingDigest;
+        }
+
+        digestExecutor.execute(() -> {
+            try {
+                digest.complete(compute(key, size, lastModified));
+            } catch (Exception e) {
+                digest.completeExceptionally(e);
+            } finally {
+                pendingDigests.remove(key, digest);
+            }
+        });
+        return digest;
+    }
+
+    public long cachedDigestCount() {
+        return digests.size();
+    }
+
+    private ContentDigest compute(Path file, long size, long lastModified) throws IOException {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        byte[] sha256;
+        CRC32 crc32 = new CRC32();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            sha256 = PrefetchingDigest.digest(channel, size, newMessageDigest(), crc32,
+                    readExecutor, CHUNK_SIZE, contentDigestReadAhead);
+        }
+
+        BasicFileAttributes fileAttributes = Files.readAttributes(file, BasicFileAttributes.class);
+        if (fileAttributes.size() != size ||
+                fileAttributes.lastModifiedTime().toMillis() != lastModified) {
+            throw new IOException("File changed while computing its digest: " + file);
+        }
+
+        ContentDigest digest = new ContentDigest(size, lastModified, sha256, crc32.getValue());
+        digests.put(file, digest);
+        dirty = true;
+        logger.debug("Computed digest of {} ({} bytes) in {}", file, size, stopwatch);
+        return digest;
+    }
+
+    private MessageDigest newMessageDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void load() {
+        if (!Files.exists(indexFile)) {
+            return;
+        }
+
+        Path rootPath = getRootPath();
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (input.readInt() != INDEX_FORMAT_VERSION ||
+                    !rootPath.toString().equals(input.readUTF())) {
+                logger.info("Ignoring incompatible content digest store [{}]", indexFile);
+                return;
+            }
+
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                Path file = rootPath.resolve(input.readUTF());
+                long size = input.readLong();
+                long lastModified = input.readLong();
+                byte[] sha256 = new byte[DIGEST_LENGTH];
+                input.readFully(sha256);
+                long crc32 = input.readInt() & 0xFFFFFFFFL;
+                digests.asMap().putIfAbsent(file,
+                        new ContentDigest(size, lastModified, sha256, crc32));
+            }
+            logger.info("Loaded {} content digests from [{}]", count, indexFile);
+        } catch (IOException e) {
+            logger.warn("Failed to load content digest store [{}]: {}", indexFile, e.getMessage());
+        }
+    }
+
+    private void persistIfDirty() {
+        if (!dirty) {
+            return;
+        }
+
+        Path rootPath = getRootPath();
+        dirty = false;
+        try {
+            Files.createDirectories(indexFile.getParent());
+            Path tempFile = Files.createTempFile(indexFile.getParent(), INDEX_FILE_NAME, ".tmp");
+            try {
+                Map<Path, ContentDigest> snapshot = new HashMap<>(digests.asMap());
+                snapshot.keySet().removeIf(file -> !file.startsWith(rootPath));
+                try (DataOutputStream output = new DataOutputStream(
+                        new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                    output.writeInt(INDEX_FORMAT_VERSION);
+                    output.writeUTF(rootPath.toString());
+                    output.writeInt(snapshot.size());
+                    for (Map.Entry<Path, ContentDigest> entry : snapshot.entrySet()) {
+                        ContentDigest digest = entry.getValue();
+                        output.writeUTF(rootPath.relativize(entry.getKey()).toString());
+                        output.writeLong(digest.getSize());
+                        output.writeLong(digest.getLastModified());
+                        output.write(digest.getSha256());
+                        output.writeInt((int) digest.getCrc32());
+                    }
+                }
+                Files.move(tempFile, indexFile,
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        } catch (IOException e) {
+            dirty = true;
+            logger.warn("Failed to persist content digest store [{}]: {}",
+                    indexFile, e.getMessage());
+        }
+    }
+
+    private Path getRootPath() {
+        return dirService.getRootPath().toAbsolutePath().normalize();
+    }
+}
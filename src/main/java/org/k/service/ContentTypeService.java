@@ -0,0 +1,264 @@
+package org.k.service;
+
+import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+
+@Service
+public class ContentTypeService {
+    private static final Logger logger = LoggerFactory.getLogger(ContentTypeService.class);
+    private static final Path SYSTEM_MIME_TYPES = Paths.get("/etc/mime.types");
+    private static final Splitter WHITESPACE_SPLITTER =
+            Splitter.onPattern("\\s+").omitEmptyStrings();
+    private static final int SNIFF_LENGTH = 512;
+
+    private static final Map<String, String> BUILT_IN_CONTENT_TYPES =
+            ImmutableMap.<String, String>builder()
+                    .put("txt", "text/plain")
+                    .put("log", "text/plain")
+                    .put("srt", "text/plain")
+                    .put("nfo", "text/plain")
+                    .put("md", "text/markdown")
+                    .put("csv", "text/csv")
+                    .put("htm", "text/html")
+                    .put("html", "text/html")
+                    .put("css", "text/css")
+                    .put("js", "application/javascript")
+                    .put("json", "application/json")
+                    .put("xml", "application/xml")
+                    .put("pdf", "application/pdf")
+                    .put("epub", "application/epub+zip")
+                    .put("zip", "application/zip")
+                    .put("rar", "application/x-rar-compressed")
+                    .put("7z", "application/x-7z-compressed")
+                    .put("gz", "application/gzip")
+                    .put("tar", "application/x-tar")
+                    .put("iso", "application/x-iso9660-image")
+                    .put("jpg", "image/jpeg")
+                    .put("jpeg", "image/jpeg")
+                    .put("png", "image/png")
+                    .put("gif", "image/gif")
+                    .put("bmp", "image/bmp")
+                    .put("webp", "image/webp")
+                    .put("svg", "image/svg+xml")
+                    .put("tif", "image/tiff")
+                    .put("tiff", "image/tiff")
+                    .put("mp3", "audio/mpeg")
+                    .put("m4a", "audio/mp4")
+                    .put("aac", "audio/aac")
+                    .put("flac", "audio/flac")
+                    .put("ogg", "audio/ogg")
+                    .put("opus", "audio/opus")
+                    .put("wav", "audio/wav")
+                    .put("mp4", "video/mp4")
+                    .put("m4v", "video/mp4")
+                    .put("mkv", "video/x-matroska")
+                    .put("webm", "video/webm")
+                    .put("avi", "video/x-msvideo")
+                    .put("mov", "video/quicktime")
+                    .put("wmv", "video/x-ms-wmv")
+                    .put("mpg", "video/mpeg")
+                    .put("mpeg", "video/mpeg")
+                    .put("ts", "video/mp2t")
+                    .put("flv", "video/x-flv")
+                    .build();
+
+    private static final List<Signature> SIGNATURES = ImmutableList.of(
+            new Signature(0, bytes(0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A), "image/png"),
+            new Signature(0, bytes(0xFF, 0xD8, 0xFF), "image/jpeg"),
+            new Signature(0, bytes('G', 'I', 'F', '8'), "image/gif"),
+            new Signature(0, bytes('%', 'P', 'D', 'F', '-'), "application/pdf"),
+            new Signature(0, bytes('P', 'K', 0x03, 0x04), "application/zip"),
+            new Signature(0, bytes('R', 'a', 'r', '!', 0x1A, 0x07),
+                    "application/x-rar-compressed"),
+            new Signature(0, bytes('7', 'z', 0xBC, 0xAF, 0x27, 0x1C),
+                    "application/x-7z-compressed"),
+            new Signature(0, bytes(0x1F, 0x8B), "application/gzip"),
+            new Signature(4, bytes('f', 't', 'y', 'p'), "video/mp4"),
+            new Signature(0, bytes(0x1A, 0x45, 0xDF, 0xA3), "video/x-matroska"),
+            new Signature(0, bytes('O', 'g', 'g', 'S'), "audio/ogg"),
+            new Signature(0, bytes('f', 'L', 'a', 'C'), "audio/flac"),
+            new Signature(0, bytes('I', 'D', '3'), "audio/mpeg"),
+            new Signature(8, bytes('W', 'A', 'V', 'E'), "audio/wav"),
+            new Signature(8, bytes('A', 'V', 'I', ' '), "video/x-msvideo"));
+
+    private final Map<String, String> contentTypesByExtension;
+    private final boolean contentTypeSniffingEnabled;
+    private final Cache<CacheKey, String> sniffedContentTypes;
+
+    @Autowired
+    public ContentTypeService(@Value("${content.type.sniffing.enabled}")
+                                      boolean contentTypeSniffingEnabled,
+                              @Value("${content.type.cache.size}") long contentTypeCacheSize) {
+        Map<String, String> contentTypes = readSystemMimeTypes();
+        contentTypes.putAll(BUILT_IN_CONTENT_TYPES);
+        this.contentTypesByExtension = ImmutableMap.copyOf(contentTypes);
+        this.contentTypeSniffingEnabled = contentTypeSniffingEnabled;
+        this.sniffedContentTypes = CacheBuilder.newBuilder()
+                .maximumSize(contentTypeCacheSize)
+                .build();
+        logger.info("Loaded {} content types by extension", contentTypesByExtension.size());
+    }
+
+    public String contentTypeOfName(String fileName) {
+        return contentTypesByExtension.get(
+                FilenameUtils.getExtension(fileName).toLowerCase(Locale.ROOT));
+    }
+
+    public String contentTypeOf(Path file, long lastModified) {
+        String contentType = contentTypeOfName(file.getFileName().toString());
+        if (contentType != null) {
+            return contentType;
+        }
+        if (!contentTypeSniffingEnabled) {
+            return MediaType.APPLICATION_OCTET_STREAM_VALUE;
+        }
+
+        try {
+            return sniffedContentTypes.get(new CacheKey(file, lastModified), () -> sniff(file));
+        } catch (ExecutionException e) {
+            logger.warn("Failed to sniff the content type of {}: {}", file, e.getMessage());
+            return MediaType.APPLICATION_OCTET_STREAM_VALUE;
+        }
+    }
+
+    private String sniff(Path file) throws IOException {
+        byte[] buffer = new byte[SNIFF_LENGTH];
+        int length = 0;
+        try (InputStream input = Files.newInputStream(file)) {
+            int read;
+            while (length < buffer.length &&
+                    (read = input.read(buffer, length, buffer.length - length)) > 0) {
+                length += read;
+            }
+        }
+
+        for (Signature signature : SIGNATURES) {
+            if (signature.matches(buffer, length)) {
+                return signature.contentType;
+            }
+        }
+        return length > 0 && isText(buffer, length) ?
+                MediaType.TEXT_PLAIN_VALUE : MediaType.APPLICATION_OCTET_STREAM_VALUE;
+    }
+
+    private static boolean isText(byte[] buffer, int length) {
+        for (int i = 0; i < length; i++) {
+            if (buffer[i] == 0) {
+                return false;
+            }
+        }
+
+        return !StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT)
+                .decode(ByteBuffer.wrap(buffer, 0, length), CharBuffer.allocate(length),
+                        length < buffer.length)
+                .isError();
+    }
+
+    private static Map<String, String> readSystemMimeTypes() {
+        Map<String, String> contentTypes = new HashMap<>();
+        if (!Files.isReadable(SYSTEM_MIME_TYPES)) {
+            return contentTypes;
+        }
+
+        try {
+            for (String line : Files.readAllLines(SYSTEM_MIME_TYPES, StandardCharsets.UTF_8)) {
+                if (line.startsWith("#")) {
+                    continue;
+                }
+                List<String> tokens = WHITESPACE_SPLITTER.splitToList(line);
+                for (String extension : tokens.subList(Math.min(1, tokens.size()), tokens.size())) {
+                    contentTypes.putIfAbsent(extension.toLowerCase(Locale.ROOT), tokens.get(0));
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to read {}: {}", SYSTEM_MIME_TYPES, e.getMessage());
+        }
+        return contentTypes;
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+
+    private static class Signature {
+        private final int offset;
+        private final byte[] magic;
+        private final String contentType;
+
+        private Signature(int offset, byte[] magic, String contentType) {
+            this.offset = offset;
+            this.magic = magic;
+            this.contentType = contentType;
+        }
+
+        private boolean matches(byte[] buffer, int length) {
+            if (length < offset + magic.length) {
+                return false;
+            }
+            for (int i = 0; i < magic.length; i++) {
+                if (buffer[offset + i] != magic[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class CacheKey {
+        private final Path file;
+        private final long lastModified;
+
+        private CacheKey(Path file, long lastModified) {
+            this.file = file;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof CacheKey)) return false;
+
+            CacheKey cacheKey = (CacheKey) o;
+
+            return lastModified == cacheKey.lastModified && file.equals(cacheKey.file);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(file, lastModified);
+        }
+    }
+}
@@ -1,31 +1,60 @@
 package org.k.service;
 
-import com.google.common.collect.ImmutableSet;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.SystemUtils;
+import org.k.data.DirectoryListing;
 import org.k.data.PathInfo;
+import org.k.data.PathInfoPage;
 import org.k.data.PathType;
 import org.k.exception.DirServiceException;
 import org.k.exception.DirectoryNotFoundException;
 import org.k.exception.NotDirectoryException;
+import org.k.exception.UnknownException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.DirectoryStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.DosFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.PreDestroy;
 
@@ -33,13 +62,68 @@ import javax.annotation.PreDestroy;
 public class DirService {
     private static final Logger logger = LoggerFactory.getLogger(DirService.class);
 
+    private static final Comparator<PathInfo> PATH_INFO_COMPARATOR = Comparator.comparing(
+            (PathInfo pathInfo) -> {
+                PathType type = pathInfo.getType();
+                switch (type) {
+                    case DIRECTORY:
+                        return -1;
+                    case FILE:
+                        return 1;
+                    default:
+                        throw new IllegalArgumentException("Invalid type: " + type);
+                }
+            }
+    ).thenComparing((p1, p2) -> p1.getPath().compareToIgnoreCase(p2.getPath()))
+            .thenComparing(PathInfo::getPath);
+
     private final Path tempDir;
 
     private final PropertiesService propertiesService;
+    private final DirectoryWatchService directoryWatchService;
+    private final ClusterListingCache clusterListingCache;
+    private final ContentTypeService contentTypeService;
+    private final LoadingCache<Path, DirectoryListing> listingCache;
+    private final Set<Path> watchedDirectories = ConcurrentHashMap.newKeySet();
+    private final ExecutorService listingRefreshPool = Executors.newFixedThreadPool(2,
+            new ThreadFactoryBuilder().setNameFormat("dirlist-listing-refresh-%d")
+                    .setDaemon(true).build());
 
     @Autowired
-    public DirService(PropertiesService propertiesService) throws IOException {
+    public DirService(PropertiesService propertiesService,
+                      DirectoryWatchService directoryWatchService,
+                      ClusterListingCache clusterListingCache,
+                      ContentTypeService contentTypeService,
+                      @Value("${listing.cache.max.entries}") long listingCacheMaxEntries,
+                      @Value("${listing.cache.refresh.seconds}") long listingCacheRefreshSeconds,
+                      @Value("${listing.cache.expiration.seconds}")
+                              long listingCacheExpirationSeconds) throws IOException {
         this.propertiesService = propertiesService;
+        this.directoryWatchService = directoryWatchService;
+        this.clusterListingCache = clusterListingCache;
+        this.contentTypeService = contentTypeService;
+        Preconditions.checkArgument(listingCacheRefreshSeconds > 0,
+                "Listing cache refresh seconds should be bigger than 0!");
+        Preconditions.checkArgument(listingCacheExpirationSeconds >= listingCacheRefreshSeconds,
+                "Listing cache expiration seconds should not be less than refresh seconds!");
+        this.listingCache = CacheBuilder.newBuilder()
+                .maximumWeight(listingCacheMaxEntries)
+                .weigher((Path dirPath, DirectoryListing listing) ->
+                        1 + listing.getPathInfos().size())
+                .refreshAfterWrite(listingCacheRefreshSeconds, TimeUnit.SECONDS)
+                .expireAfterWrite(listingCacheExpirationSeconds, TimeUnit.SECONDS)
+                .removalListener(this::onListingRemoval)
+                .recordStats()
+                .build(CacheLoader.asyncReloading(new CacheLoader<Path, DirectoryListing>() {
+                    @Override
+                    public DirectoryListing load(Path dirPath) throws IOException {
+                        return loadDirectoryListing(dirPath);
+                    }
+                }, listingRefreshPool));
+        directoryWatchService.addListener(this::onDirectoryChanged);
+        clusterListingCache.addInvalidationListener(key ->
+                listingCache.invalidate(getDirectoryKey(key)));
+
         this.tempDir = Files.createTempDirectory("dirlist-");
         logger.info("Created temp directory for zipped directory downloads: [{}]",
                 tempDir.toAbsolutePath().toString());
@@ -47,6 +131,8 @@ public class DirService {
 
     @PreDestroy
     protected void preDestroy() throws IOException {
+        listingRefreshPool.shutdownNow();
+
         String tempDirAbsolutePath = tempDir.toAbsolutePath().toString();
         logger.info("Attempting to delete temporary directory for zipped directory downloads: [{}]",
                 tempDirAbsolutePath);
@@ -55,36 +141,184 @@ public class DirService {
         logger.info("Successfully deleted the temp directory [{}]", tempDirAbsolutePath);
     }
 
-    public Set<PathInfo> listPathInfosForDirectory(String pathString) throws IOException {
-        Set<PathInfo> pathInfos = new TreeSet<>(
-                Comparator.comparing(
-                        (PathInfo pathInfo) -> {
-                            PathType type = pathInfo.getType();
-                            switch (type) {
-                                case DIRECTORY:
-                                    return -1;
-                                case FILE:
-                                    return 1;
-                                default:
-                                    throw new IllegalArgumentException("Invalid type: " + type);
-                            }
-                        }
-                ).thenComparing((p1, p2) -> p1.getPath().compareToIgnoreCase(p2.getPath()))
-        );
-        Path dirPath = getPath(pathString);
+    public List<PathInfo> listPathInfosForDirectory(String pathString) throws IOException {
+        return getDirectoryListing(pathString).getPathInfos();
+    }
+
+    public DirectoryListing getDirectoryListing(String pathString) throws IOException {
+        return getCachedDirectoryListing(getDirectoryKey(pathString));
+    }
+
+    public PathInfoPage listPathInfoPageForDirectory(String pathString,
+                                                     Optional<PathInfo> after,
+                                                     int limit) throws IOException {
+        Preconditions.checkArgument(limit > 0);
+        Path dirPath = getDirectoryKey(pathString);
+
+        DirectoryListing cachedListing = listingCache.getIfPresent(dirPath);
+        if (cachedListing != null) {
+            return pageOf(cachedListing.getPathInfos(), after, limit);
+        }
+
+        checkIfPathIsExistingDirectory(dirPath);
+
+        TreeSet<PathInfo> window = new TreeSet<>(PATH_INFO_COMPARATOR);
+        forEachPathInfo(dirPath, pathInfo -> {
+            if (after.isPresent() && PATH_INFO_COMPARATOR.compare(pathInfo, after.get()) <= 0) {
+                return;
+            }
+            if (window.size() <= limit) {
+                window.add(pathInfo);
+            } else if (PATH_INFO_COMPARATOR.compare(pathInfo, window.last()) < 0) {
+                window.add(pathInfo);
+                window.pollLast();
+            }
+        });
+
+        boolean hasMore = window.size() > limit;
+        if (hasMore) {
+            window.pollLast();
+        }
+        return new PathInfoPage(ImmutableList.copyOf(window), hasMore);
+    }
+
+    public void forEachPathInfoInDirectory(String pathString, PathInfoVisitor visitor)
+            throws IOException {
+        Path dirPath = getDirectoryKey(pathString);
+
+        DirectoryListing cachedListing = listingCache.getIfPresent(dirPath);
+        if (cachedListing != null) {
+            for (PathInfo pathInfo : cachedListing.getPathInfos()) {
+                visitor.visit(pathInfo);
+            }
+            return;
+        }
 
         checkIfPathIsExistingDirectory(dirPath);
+        forEachPathInfo(dirPath, visitor);
+    }
+
+    public CacheStats listingCacheStats() {
+        return listingCache.stats();
+    }
+
+    public long listingCacheSize() {
+        return listingCache.size();
+    }
+
+    private PathInfoPage pageOf(List<PathInfo> pathInfos, Optional<PathInfo> after, int limit) {
+        int from = after.map(pathInfo -> {
+            int index = Collections.binarySearch(pathInfos, pathInfo, PATH_INFO_COMPARATOR);
+            return index >= 0 ? index + 1 : -index - 1;
+        }).orElse(0);
+        int to = Math.min(from + limit, pathInfos.size());
+        return new PathInfoPage(pathInfos.subList(from, to), to < pathInfos.size());
+    }
+
+    Path getDirectoryKey(String pathString) {
+        return getPath(pathString).toAbsolutePath().normalize();
+    }
 
-        DirectoryStream<Path> stream = getStreamOfPaths(dirPath);
-        for (Path path : stream) {
-            String normalizedRelativePathString = getNormalizedRelativePathString(path);
-            pathInfos.add(new PathInfo(normalizedRelativePathString,
-                    Files.isDirectory(path) ? PathType.DIRECTORY : PathType.FILE,
-                    ExtractionService.ArchiveType.fileHasSupportedType(normalizedRelativePathString)
-            ));
+    List<PathInfo> peekOrReadPathInfos(Path dirPath) throws IOException {
+        DirectoryListing cachedListing = listingCache.getIfPresent(dirPath);
+        if (cachedListing != null) {
+            return cachedListing.getPathInfos();
         }
 
-        return ImmutableSet.copyOf(pathInfos);
+        checkIfPathIsExistingDirectory(dirPath);
+        return readPathInfos(dirPath);
+    }
+
+    private DirectoryListing getCachedDirectoryListing(Path dirPath) throws IOException {
+        try {
+            return listingCache.get(dirPath);
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            Throwable cause = e.getCause();
+            Throwables.throwIfInstanceOf(cause, IOException.class);
+            Throwables.throwIfUnchecked(cause);
+            throw new UnknownException("Failed to list " + dirPath, cause);
+        }
+    }
+
+    private DirectoryListing loadDirectoryListing(Path dirPath) throws IOException {
+        checkIfPathIsExistingDirectory(dirPath);
+        if (watchedDirectories.add(dirPath) && !directoryWatchService.watch(dirPath)) {
+            watchedDirectories.remove(dirPath);
+        }
+
+        return clusterListingCache.getOrLoad(getNormalizedRelativePathString(dirPath, true), () -> {
+            List<PathInfo> pathInfos = readPathInfos(dirPath);
+            return new DirectoryListing(pathInfos, digestOf(pathInfos));
+        });
+    }
+
+    private void onDirectoryChanged(Path dirPath) {
+        listingCache.invalidate(dirPath);
+        clusterListingCache.invalidate(getNormalizedRelativePathString(dirPath, true));
+    }
+
+    private void onListingRemoval(RemovalNotification<Path, DirectoryListing> notification) {
+        Path dirPath = notification.getKey();
+        if (notification.getCause() != RemovalCause.REPLACED &&
+                watchedDirectories.remove(dirPath)) {
+            directoryWatchService.unwatch(dirPath);
+        }
+    }
+
+    private List<PathInfo> readPathInfos(Path dirPath) throws IOException {
+        List<PathInfo> pathInfos = new ArrayList<>();
+        forEachPathInfo(dirPath, pathInfos::add);
+
+        pathInfos.sort(PATH_INFO_COMPARATOR);
+        return ImmutableList.copyOf(pathInfos);
+    }
+
+    private String digestOf(List<PathInfo> pathInfos) {
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        hasher.putInt(pathInfos.size());
+        for (PathInfo pathInfo : pathInfos) {
+            hasher.putString(pathInfo.getPath(), StandardCharsets.UTF_8)
+                    .putInt(pathInfo.getType().ordinal())
+                    .putLong(pathInfo.getSize())
+                    .putLong(pathInfo.getLastModified());
+        }
+        return hasher.hash().toString();
+    }
+
+    private void forEachPathInfo(Path dirPath, PathInfoVisitor visitor) throws IOException {
+        Files.walkFileTree(dirPath, EnumSet.of(FileVisitOption.FOLLOW_LINKS), 1,
+                new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path path, BasicFileAttributes attributes)
+                            throws IOException {
+                        if (isVisible(path, attributes)) {
+                            visitor.visit(createPathInfo(path, attributes));
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path path, IOException e)
+                            throws IOException {
+                        if (path.equals(dirPath)) {
+                            throw e;
+                        }
+                        logger.debug("Skipping unreadable entry {}: {}", path, e.getMessage());
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+    }
+
+    private PathInfo createPathInfo(Path path, BasicFileAttributes attributes) {
+        boolean directory = attributes.isDirectory();
+        String normalizedRelativePathString = getNormalizedRelativePathString(path, directory);
+        return new PathInfo(normalizedRelativePathString,
+                directory ? PathType.DIRECTORY : PathType.FILE,
+                ExtractionService.ArchiveType.fileHasSupportedType(normalizedRelativePathString),
+                directory ? 0L : attributes.size(),
+                attributes.lastModifiedTime().toMillis(),
+                directory ? null :
+                        contentTypeService.contentTypeOfName(path.getFileName().toString()));
     }
 
     Path getPath(String pathString) {
@@ -106,23 +340,20 @@ public class DirService {
         }
     }
 
-    private DirectoryStream<Path> getStreamOfPaths(Path dirPath) throws IOException {
-        DirectoryStream.Filter<Path> filter = file -> !pathIsHidden(file);
-        boolean showHiddenFiles = propertiesService.showHiddenFiles();
-        return showHiddenFiles ? Files.newDirectoryStream(dirPath) :
-                Files.newDirectoryStream(dirPath, filter);
+    boolean isVisible(Path path, BasicFileAttributes attributes) {
+        return propertiesService.showHiddenFiles() || !pathIsHidden(path, attributes);
     }
 
-    private boolean pathIsHidden(Path path) throws IOException {
+    private boolean pathIsHidden(Path path, BasicFileAttributes attributes) {
         return path.getFileName().toString().startsWith(".") ||
-                SystemUtils.IS_OS_WINDOWS &&
-                        Files.readAttributes(path, DosFileAttributes.class).isHidden();
+                SystemUtils.IS_OS_WINDOWS && attributes instanceof DosFileAttributes &&
+                        ((DosFileAttributes) attributes).isHidden();
     }
 
-    private String getNormalizedRelativePathString(Path path) {
-        Path rootDirectoryPath = Paths.get(PropertiesService.ROOT_DIRECTORY);
+    private String getNormalizedRelativePathString(Path path, boolean directory) {
+        Path rootDirectoryPath = getRootPath().toAbsolutePath().normalize();
         String relativePathString = rootDirectoryPath.relativize(path).toString();
-        return FilenameUtils.normalize(Files.isDirectory(path) && !relativePathString.endsWith("/") ?
+        return FilenameUtils.normalize(directory && !relativePathString.endsWith("/") ?
                 relativePathString + "/" : relativePathString, true);
     }
 
@@ -0,0 +1,508 @@
+package org.k.service;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.ILock;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipParameters;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.apache.commons.io.output.TeeOutputStream;
+import org.k.data.ArchiveFormat;
+import org.k.data.BatchZip;
+import org.k.data.ContentDigest;
+import org.k.data.DirectoryTar;
+import org.k.data.DirectoryZip;
+import org.k.exception.MaxDirectoryDownloadSizeExceededException;
+import org.k.util.ByteEntropy;
+import org.k.util.ParallelZipWriter;
+import org.k.util.StoredZipLayout;
+import org.k.util.ZipManifest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+
+import javax.annotation.PreDestroy;
+
+@Service
+public class DirectoryArchiveService {
+    private static final Logger logger = LoggerFactory.getLogger(DirectoryArchiveService.class);
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+    private static final String MANIFEST_FILE_SUFFIX = ".manifest";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int DEFLATE_CHUNK_SIZE = 1024 * 1024;
+    private static final int PENDING_CHUNKS_PER_THREAD = 2;
+    private static final Set<String> COMPRESSED_EXTENSIONS = ImmutableSet.of(
+            "jpg", "jpeg", "png", "gif", "webp", "heic",
+            "mp3", "m4a", "aac", "ogg", "opus", "flac",
+            "mp4", "m4v", "mkv", "avi", "mov", "webm",
+            "zip", "gz", "tgz", "bz2", "xz", "7z", "rar", "zst", "lz4",
+            "jar", "war", "apk", "docx", "xlsx", "pptx", "odt", "epub");
+    private static final int ENTROPY_SAMPLE_MIN_SIZE = 4 * 1024;
+    private static final int ENTROPY_SAMPLE_SIZE = 64 * 1024;
+    private static final double STORED_MIN_BITS_PER_BYTE = 7.5;
+    private static final long STORED_ZIP_LAYOUT_EXPIRATION_MINUTES = 60L;
+
+    private final HazelcastInstance hazelcastInstance;
+    private final PropertiesService propertiesService;
+    private final ContentDigestService contentDigestService;
+    private final boolean directoryZipCacheEnabled;
+    private final int maxPendingChunks;
+    private final ExecutorService deflateExecutor;
+    private final ExecutorService planExecutor = Executors.newFixedThreadPool(2,
+            new ThreadFactoryBuilder()
+                    .setNameFormat("dirlist-zip-plan-%d").setDaemon(true).build());
+    private final ConcurrentMap<Path, CompletableFuture<StoredZipLayout>> pendingStoredZipPlans =
+            new ConcurrentHashMap<>();
+    private final Cache<Path, StoredZipLayout> storedZipLayouts = CacheBuilder.newBuilder()
+            .expireAfterAccess(STORED_ZIP_LAYOUT_EXPIRATION_MINUTES, TimeUnit.MINUTES)
+            .build();
+
+    @Autowired
+    public DirectoryArchiveService(HazelcastInstance hazelcastInstance,
+                                   PropertiesService propertiesService,
+                                   ContentDigestService contentDigestService,
+                                   @Value("${directory.zip.cache.enabled}")
+                                           boolean directoryZipCacheEnabled,
+                                   @Value("${directory.zip.deflate.threads}")
+                                           int directoryZipDeflateThreads) {
+        Preconditions.checkArgument(directoryZipDeflateThreads >= 0,
+                "Directory zip deflate threads should not be negative!");
+        int deflateThreads = directoryZipDeflateThreads > 0 ?
+                directoryZipDeflateThreads : Runtime.getRuntime().availableProcessors();
+        this.hazelcastInstance = hazelcastInstance;
+        this.propertiesService = propertiesService;
+        this.contentDigestService = contentDigestService;
+        this.directoryZipCacheEnabled = directoryZipCacheEnabled;
+        this.maxPendingChunks = PENDING_CHUNKS_PER_THREAD * deflateThreads;
+        this.deflateExecutor = Executors.newFixedThreadPool(deflateThreads,
+                new ThreadFactoryBuilder()
+                        .setNameFormat("dirlist-zip-deflate-%d").setDaemon(true).build());
+    }
+
+    @PreDestroy
+    protected void preDestroy() {
+        deflateExecutor.shutdownNow();
+        planExecutor.shutdownNow();
+    }
+
+    public boolean isZipCacheCurrent(Path directory, Path cacheFile) throws IOException {
+        if (!Files.isRegularFile(cacheFile)) {
+            return false;
+        }
+        Optional<ZipManifest> manifestOptional = readManifest(cacheFile);
+        if (!manifestOptional.isPresent() ||
+                manifestOptional.get().getArchiveLength() != Files.size(cacheFile)) {
+            return false;
+        }
+
+        ZipManifest manifest = manifestOptional.get();
+        int count = 0;
+        try (Stream<Path> files = Files.walk(directory)) {
+            Iterator<Path> iterator = files.filter(Files::isRegularFile).iterator();
+            while (iterator.hasNext()) {
+                Path file = iterator.next();
+                BasicFileAttributes attributes = Files.readAttributes(file,
+                        BasicFileAttributes.class);
+                boolean unchanged = manifest.find(zipEntryName(directory, file))
+                        .filter(entry -> entry.matches(attributes.size(),
+                                attributes.lastModifiedTime().toMillis()))
+                        .isPresent();
+                if (!unchanged) {
+                    return false;
+                }
+                count++;
+            }
+        }
+        return count == manifest.getEntries().size();
+    }
+
+    public void touchZipCache(Path cacheFile) throws IOException {
+        FileTime now = FileTime.from(Instant.now());
+        Files.setLastModifiedTime(cacheFile, now);
+        Path manifestFile = manifestFileOf(cacheFile);
+        if (Files.exists(manifestFile)) {
+            Files.setLastModifiedTime(manifestFile, now);
+        }
+    }
+
+    // the previous cached zip, when still there, donates the entries of unchanged files
+    public void writeZip(DirectoryZip zip, OutputStream output) throws IOException {
+        Path cacheFile = zip.getCacheFile();
+        ILock lock = directoryZipCacheEnabled ?
+                hazelcastInstance.getLock(cacheFile.toAbsolutePath().toString()) : null;
+        if (lock == null || !lock.tryLock()) {
+            writeZip(zip.getDirectory(), cacheFile, output);
+            return;
+        }
+
+        try {
+            Files.createDirectories(cacheFile.getParent());
+            Path tempFile = Files.createTempFile(cacheFile.getParent(),
+                    cacheFile.getFileName().toString(), TEMP_FILE_SUFFIX);
+            Path manifestFile = manifestFileOf(cacheFile);
+            Path tempManifestFile = Files.createTempFile(cacheFile.getParent(),
+                    manifestFile.getFileName().toString(), TEMP_FILE_SUFFIX);
+            try {
+                ZipManifest manifest;
+                try (OutputStream cacheOutput = Files.newOutputStream(tempFile)) {
+                    manifest = writeZip(zip.getDirectory(), cacheFile, new TeeOutputStream(
+                            new CloseShieldOutputStream(output), cacheOutput));
+                }
+                try (OutputStream manifestOutput = new BufferedOutputStream(
+                        Files.newOutputStream(tempManifestFile))) {
+                    manifest.writeTo(manifestOutput);
+                }
+                // a zip is never left next to a manifest that describes another zip
+                Files.deleteIfExists(manifestFile);
+                Files.move(tempFile, cacheFile,
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                Files.move(tempManifestFile, manifestFile,
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tempFile);
+                Files.deleteIfExists(tempManifestFile);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // a single walk over the selection collects every entry and enforces the size budget
+    public BatchZip planBatchZip(Path rootPath, List<Path> selection, long maxSize)
+            throws IOException {
+        Map<String, BatchZip.Entry> entries = new LinkedHashMap<>();
+        long totalSize = 0;
+        for (Path selected : selection) {
+            try (Stream<Path> files = Files.walk(selected)) {
+                Iterator<Path> iterator = files.iterator();
+                while (iterator.hasNext()) {
+                    Path file = iterator.next();
+                    BasicFileAttributes attributes = Files.readAttributes(file,
+                            BasicFileAttributes.class);
+                    String name = zipEntryName(rootPath, file);
+                    if (!attributes.isRegularFile() || entries.containsKey(name)) {
+                        continue;
+                    }
+                    totalSize += attributes.size();
+                    if (totalSize > maxSize) {
+                        throw new MaxDirectoryDownloadSizeExceededException();
+                    }
+                    entries.put(name, new BatchZip.Entry(name, file, attributes.size(),
+                            attributes.lastModifiedTime().toMillis()));
+                }
+            }
+        }
+        return new BatchZip(new ArrayList<>(entries.values()));
+    }
+
+    public void writeBatchZip(BatchZip zip, OutputStream output) throws IOException {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        try (ParallelZipWriter zipWriter = newZipWriter(output,
+                propertiesService.zipDeflateLevel())) {
+            for (BatchZip.Entry entry : zip.getEntries()) {
+                zipWriter.addFile(entry.getName(), entry.getFile(),
+                        compressionMethod(entry.getFile()), entry.getSize(),
+                        entry.getLastModified());
+            }
+            zipWriter.finish();
+        }
+        logger.debug("Zipped {} selected files in {}", zip.getEntries().size(), stopwatch);
+    }
+
+    public void writeTar(DirectoryTar tar, OutputStream output) throws IOException {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        Path directory = tar.getDirectory();
+        int entries = 0;
+        try (Stream<Path> files = Files.walk(directory);
+             TarArchiveOutputStream tarOutput = new TarArchiveOutputStream(compressing(
+                     tar.getFormat(), new BufferedOutputStream(
+                             new CloseShieldOutputStream(output), BUFFER_SIZE)))) {
+            tarOutput.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+            tarOutput.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+            tarOutput.setAddPaxHeadersForNonAsciiNames(true);
+            Iterator<Path> iterator = files.filter(Files::isRegularFile).iterator();
+            while (iterator.hasNext()) {
+                Path file = iterator.next();
+                TarArchiveEntry entry = new TarArchiveEntry(file, zipEntryName(directory, file));
+                tarOutput.putArchiveEntry(entry);
+                try (InputStream input = Files.newInputStream(file)) {
+                    if (ByteStreams.copy(ByteStreams.limit(input, entry.getSize()), tarOutput)
+                            != entry.getSize()) {
+                        throw new IOException("File " + file +
+                                " changed while it was being archived");
+                    }
+                }
+                tarOutput.closeArchiveEntry();
+                entries++;
+            }
+            tarOutput.finish();
+        }
+        logger.debug("Archived {} files of {} as {} in {}",
+                entries, directory, tar.getFormat(), stopwatch);
+    }
+
+    // the CRCs come from the content digest store, which keeps them across restarts; files it
+    // does not know yet are hashed on its pool in parallel before the layout is fixed
+    // planned off the request thread, since files missing from the digest store are hashed for
+    // their CRCs, and concurrent requests for one directory share the plan. Recently used
+    // layouts keep their CRCs, so resumed downloads do not depend on the bounded digest store.
+    public CompletableFuture<StoredZipLayout> planStoredZip(Path directory) {
+        CompletableFuture<StoredZipLayout> plan = new CompletableFuture<>();
+        CompletableFuture<StoredZipLayout> pendingPlan =
+                pendingStoredZipPlans.putIfAbsent(directory, plan);
+        if (pendingPlan != null) {
+            return pendingPlan;
+        }
+        plan.whenComplete((layout, e) -> pendingStoredZipPlans.remove(directory, plan));
+        try {
+            planExecutor.execute(() -> planStoredZip(directory, plan));
+        } catch (RejectedExecutionException e) {
+            plan.completeExceptionally(e);
+        }
+        return plan;
+    }
+
+    private void planStoredZip(Path directory, CompletableFuture<StoredZipLayout> plan) {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        StoredZipLayout previousLayout = storedZipLayouts.getIfPresent(directory);
+        Map<String, StoredZipLayout.Entry> previousEntries = previousLayout == null ?
+                Collections.emptyMap() : previousLayout.getEntries().stream()
+                .collect(Collectors.toMap(StoredZipLayout.Entry::getName, entry -> entry));
+        List<CompletableFuture<StoredZipLayout.Entry>> entries = new ArrayList<>();
+        int reusedEntries = 0;
+        try (Stream<Path> files = Files.walk(directory)) {
+            Map<String, Path> filesByName = new TreeMap<>();
+            files.filter(Files::isRegularFile)
+                    .forEach(file -> filesByName.put(zipEntryName(directory, file), file));
+            for (Map.Entry<String, Path> file : filesByName.entrySet()) {
+                String name = file.getKey();
+                BasicFileAttributes attributes = Files.readAttributes(file.getValue(),
+                        BasicFileAttributes.class);
+                StoredZipLayout.Entry previousEntry = previousEntries.get(name);
+                if (previousEntry != null && previousEntry.getSize() == attributes.size() &&
+                        previousEntry.getLastModified() ==
+                                attributes.lastModifiedTime().toMillis()) {
+                    entries.add(CompletableFuture.completedFuture(previousEntry));
+                    reusedEntries++;
+                    continue;
+                }
+                entries.add(contentDigestService.digestOf(file.getValue(), attributes)
+                        .thenApply(digest -> new StoredZipLayout.Entry(name, file.getValue(),
+                                digest.getSize(), digest.getLastModified(),
+                                digest.getCrc32())));
+            }
+        } catch (IOException | UncheckedIOException e) {
+            plan.completeExceptionally(e instanceof UncheckedIOException ? e.getCause() : e);
+            return;
+        }
+
+        int reused = reusedEntries;
+        CompletableFuture.allOf(entries.toArray(new CompletableFuture[0]))
+                .whenComplete((ignored, e) -> {
+                    if (e != null) {
+                        plan.completeExceptionally(e instanceof CompletionException ?
+                                e.getCause() : e);
+                        return;
+                    }
+                    StoredZipLayout layout = new StoredZipLayout(entries.stream()
+                            .map(CompletableFuture::join)
+                            .collect(Collectors.toList()));
+                    storedZipLayouts.put(directory, layout);
+                    logger.debug("Planned stored zip of {} files of {} ({} reused) in {}",
+                            entries.size(), directory, reused, stopwatch);
+                    plan.complete(layout);
+                });
+    }
+
+    public void writeStoredZip(StoredZipLayout layout,
+                               long position,
+                               long count,
+                               OutputStream output) throws IOException {
+        layout.write(position, count, output);
+    }
+
+    private ZipManifest writeZip(Path directory, Path previousZip, OutputStream output)
+            throws IOException {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        int level = propertiesService.zipDeflateLevel();
+        Optional<ZipManifest> previousManifest = readManifest(previousZip)
+                .filter(manifest -> manifest.getLevel() == level);
+        int entries = 0;
+        int storedEntries = 0;
+        int copiedEntries = 0;
+        try (FileChannel previousArchive = openPreviousArchive(previousZip, previousManifest);
+             Stream<Path> files = Files.walk(directory);
+             ParallelZipWriter zipWriter = newZipWriter(output, level)) {
+            Iterator<Path> iterator = files.filter(Files::isRegularFile).iterator();
+            while (iterator.hasNext()) {
+                Path file = iterator.next();
+                String name = zipEntryName(directory, file);
+                entries++;
+                if (previousArchive != null &&
+                        copyUnchangedEntry(zipWriter, previousManifest.get(), previousArchive,
+                                name, file)) {
+                    copiedEntries++;
+                    continue;
+                }
+
+                int method = compressionMethod(file);
+                zipWriter.addFile(name, file, method);
+                if (method == ZipEntry.STORED) {
+                    storedEntries++;
+                }
+            }
+            zipWriter.finish();
+            logger.debug("Zipped {} files ({} stored, {} copied) of {} in {}",
+                    entries, storedEntries, copiedEntries, directory, stopwatch);
+            return zipWriter.getManifest();
+        }
+    }
+
+    private ParallelZipWriter newZipWriter(OutputStream output, int level) {
+        return new ParallelZipWriter(new BufferedOutputStream(
+                new CloseShieldOutputStream(output), BUFFER_SIZE), deflateExecutor, level,
+                DEFLATE_CHUNK_SIZE, maxPendingChunks);
+    }
+
+    private static boolean copyUnchangedEntry(ParallelZipWriter zipWriter,
+                                              ZipManifest previousManifest,
+                                              FileChannel previousArchive,
+                                              String name,
+                                              Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        Optional<ZipManifest.Entry> previousEntry = previousManifest.find(name)
+                .filter(entry -> entry.matches(attributes.size(),
+                        attributes.lastModifiedTime().toMillis()));
+        return previousEntry.isPresent() &&
+                zipWriter.copyEntry(previousEntry.get(), previousArchive);
+    }
+
+    private static FileChannel openPreviousArchive(Path previousZip,
+                                                   Optional<ZipManifest> previousManifest)
+            throws IOException {
+        if (!previousManifest.isPresent() || !Files.isRegularFile(previousZip)) {
+            return null;
+        }
+        FileChannel channel = FileChannel.open(previousZip);
+        if (channel.size() != previousManifest.get().getArchiveLength()) {
+            channel.close();
+            return null;
+        }
+        return channel;
+    }
+
+    private static Optional<ZipManifest> readManifest(Path cacheFile) {
+        Path manifestFile = manifestFileOf(cacheFile);
+        if (!Files.exists(manifestFile)) {
+            return Optional.empty();
+        }
+        try (InputStream input = new BufferedInputStream(Files.newInputStream(manifestFile))) {
+            return ZipManifest.readFrom(input);
+        } catch (IOException e) {
+            logger.warn("Failed to read zip manifest [{}]: {}", manifestFile, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private static Path manifestFileOf(Path cacheFile) {
+        return cacheFile.resolveSibling(cacheFile.getFileName() + MANIFEST_FILE_SUFFIX);
+    }
+
+    private static String zipEntryName(Path directory, Path file) {
+        return directory.relativize(file).toString().replace(File.separatorChar, '/');
+    }
+
+    private OutputStream compressing(ArchiveFormat format, OutputStream output)
+            throws IOException {
+        switch (format) {
+            case TAR_GZ:
+                GzipParameters parameters = new GzipParameters();
+                parameters.setCompressionLevel(propertiesService.zipDeflateLevel());
+                return new GzipCompressorOutputStream(output, parameters);
+            case TAR_ZST:
+                return new ZstdCompressorOutputStream(output, propertiesService.zstdLevel());
+            default:
+                return output;
+        }
+    }
+
+    private static int compressionMethod(Path file) throws IOException {
+        String extension = FilenameUtils.getExtension(file.getFileName().toString())
+                .toLowerCase(Locale.ENGLISH);
+        if (COMPRESSED_EXTENSIONS.contains(extension)) {
+            return ZipEntry.STORED;
+        }
+        return isIncompressible(file) ? ZipEntry.STORED : ZipEntry.DEFLATED;
+    }
+
+    // samples the middle of the file, where headers and trailers do not skew the estimate
+    private static boolean isIncompressible(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file)) {
+            long size = channel.size();
+            if (size < ENTROPY_SAMPLE_MIN_SIZE) {
+                return false;
+            }
+            ByteBuffer sample = ByteBuffer.allocate((int) Math.min(ENTROPY_SAMPLE_SIZE, size));
+            long position = (size - sample.capacity()) / 2;
+            while (sample.hasRemaining()) {
+                int read = channel.read(sample, position + sample.position());
+                if (read < 0) {
+                    break;
+                }
+            }
+            return ByteEntropy.bitsPerByte(sample.array(), 0, sample.position())
+                    > STORED_MIN_BITS_PER_BYTE;
+        }
+    }
+}
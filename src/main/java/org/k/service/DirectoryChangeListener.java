@@ -0,0 +1,8 @@
+package org.k.service;
+
+import java.nio.file.Path;
+
+@FunctionalInterface
+public interface DirectoryChangeListener {
+    void directoryChanged(Path directory);
+}
@@ -0,0 +1,361 @@
+package org.k.service;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+@Service
+public class DirectorySizeService implements DirectoryChangeListener {
+    private static final Logger logger = LoggerFactory.getLogger(DirectorySizeService.class);
+    private static final String INDEX_FILE_NAME = "directory-sizes.dat";
+    private static final int INDEX_FORMAT_VERSION = 1;
+
+    private final DirService dirService;
+    private final DirectoryWatchService directoryWatchService;
+    private final boolean directorySizeIndexEnabled;
+    private final long directorySizeIndexRebuildSeconds;
+    private final long directorySizeIndexPersistSeconds;
+    private final Path indexFile;
+    private final ScheduledExecutorService indexExecutor =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("dirlist-size-index-%d").setDaemon(true).build());
+    private final Map<Path, SizeEntry> entries = new ConcurrentHashMap<>();
+    private final Set<Path> watchedDirectories = new HashSet<>();
+
+    private volatile boolean dirty;
+
+    @Autowired
+    public DirectorySizeService(DirService dirService,
+                                DirectoryWatchService directoryWatchService,
+                                @Value("${directory.size.index.enabled}")
+                                        boolean directorySizeIndexEnabled,
+                                @Value("${directory.size.index.rebuild.seconds}")
+                                        long directorySizeIndexRebuildSeconds,
+                                @Value("${directory.size.index.persist.seconds}")
+                                        long directorySizeIndexPersistSeconds,
+                                @Value("${index.directory}") String indexDirectory) {
+        Preconditions.checkArgument(directorySizeIndexRebuildSeconds > 0,
+                "Directory size index rebuild seconds should be bigger than 0!");
+        Preconditions.checkArgument(directorySizeIndexPersistSeconds > 0,
+                "Directory size index persist seconds should be bigger than 0!");
+        this.dirService = dirService;
+        this.directoryWatchService = directoryWatchService;
+        this.directorySizeIndexEnabled = directorySizeIndexEnabled;
+        this.directorySizeIndexRebuildSeconds = directorySizeIndexRebuildSeconds;
+        this.directorySizeIndexPersistSeconds = directorySizeIndexPersistSeconds;
+        this.indexFile = Paths.get(indexDirectory, INDEX_FILE_NAME);
+    }
+
+    @PostConstruct
+    protected void postConstruct() {
+        if (!directorySizeIndexEnabled) {
+            return;
+        }
+
+        directoryWatchService.addListener(this);
+        indexExecutor.execute(() -> {
+            load();
+            indexTree(true);
+        });
+        indexExecutor.scheduleWithFixedDelay(() -> indexTree(false),
+                directorySizeIndexRebuildSeconds, directorySizeIndexRebuildSeconds,
+                TimeUnit.SECONDS);
+        indexExecutor.scheduleWithFixedDelay(this::persistIfDirty,
+                directorySizeIndexPersistSeconds, directorySizeIndexPersistSeconds,
+                TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    protected void preDestroy() throws InterruptedException {
+        if (directorySizeIndexEnabled) {
+            indexExecutor.execute(this::persistIfDirty);
+        }
+        indexExecutor.shutdown();
+        if (!indexExecutor.awaitTermination(10L, TimeUnit.SECONDS)) {
+            indexExecutor.shutdownNow();
+        }
+    }
+
+    // only a total whose whole subtree is watched is kept current between rebuilds; anything
+    // else may be hours old, so callers walk the directory instead
+    public OptionalLong sizeOf(Path directory) {
+        SizeEntry entry = entries.get(directory.toAbsolutePath().normalize());
+        return entry != null && entry.covered ?
+                OptionalLong.of(entry.totalBytes) : OptionalLong.empty();
+    }
+
+    public int indexedDirectoryCount() {
+        return entries.size();
+    }
+
+    @Override
+    public void directoryChanged(Path directory) {
+        indexExecutor.execute(() -> updateDirectory(directory));
+    }
+
+    private void indexTree(boolean trustUnchangedDirectories) {
+        Path rootPath = getRootPath();
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        try {
+            long totalBytes = indexDirectory(rootPath, trustUnchangedDirectories);
+            dirty = true;
+            logger.info("Indexed sizes of {} directories ({} bytes) under [{}] in {}",
+                    entries.size(), totalBytes, rootPath, stopwatch);
+        } catch (Exception e) {
+            logger.error("Failed to index directory sizes under [{}]", rootPath, e);
+        }
+    }
+
+    private long indexDirectory(Path directory, boolean trustUnchangedDirectories)
+            throws IOException {
+        long lastModified = Files.getLastModifiedTime(directory, LinkOption.NOFOLLOW_LINKS)
+                .toMillis();
+        SizeEntry knownEntry = entries.get(directory);
+        SizeEntry entry = trustUnchangedDirectories && knownEntry != null &&
+                knownEntry.lastModified == lastModified ?
+                knownEntry : scan(directory, lastModified);
+
+        if (knownEntry != null && knownEntry != entry) {
+            knownEntry.childDirectories.stream()
+                    .filter(child -> !entry.childDirectories.contains(child))
+                    .forEach(this::removeSubtree);
+        }
+
+        // watched before its children, so the shallow directories come first under the cap
+        boolean covered = watch(directory);
+        long totalBytes = entry.ownBytes;
+        for (Path childDirectory : entry.childDirectories) {
+            try {
+                totalBytes += indexDirectory(childDirectory, trustUnchangedDirectories);
+                covered &= entries.get(childDirectory).covered;
+            } catch (IOException e) {
+                logger.debug("Skipping unreadable directory {}: {}",
+                        childDirectory, e.getMessage());
+                removeSubtree(childDirectory);
+                covered = false;
+            }
+        }
+        entry.totalBytes = totalBytes;
+        entry.covered = covered;
+        entries.put(directory, entry);
+        return totalBytes;
+    }
+
+    private void updateDirectory(Path directory) {
+        SizeEntry oldEntry = entries.get(directory);
+        if (oldEntry == null || !Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS)) {
+            return;
+        }
+
+        SizeEntry newEntry;
+        try {
+            newEntry = scan(directory, Files.getLastModifiedTime(directory,
+                    LinkOption.NOFOLLOW_LINKS).toMillis());
+        } catch (IOException e) {
+            logger.warn("Failed to rescan [{}] for the size index: {}", directory, e.getMessage());
+            return;
+        }
+
+        oldEntry.childDirectories.stream()
+                .filter(child -> !newEntry.childDirectories.contains(child))
+                .forEach(this::removeSubtree);
+
+        long totalBytes = newEntry.ownBytes;
+        for (Path childDirectory : newEntry.childDirectories) {
+            SizeEntry childEntry = entries.get(childDirectory);
+            try {
+                totalBytes += childEntry != null ? childEntry.totalBytes :
+                        indexDirectory(childDirectory, false);
+            } catch (IOException e) {
+                logger.debug("Skipping unreadable directory {}: {}",
+                        childDirectory, e.getMessage());
+            }
+        }
+        newEntry.totalBytes = totalBytes;
+        newEntry.covered = isCovered(directory, newEntry);
+        entries.put(directory, newEntry);
+
+        long delta = totalBytes - oldEntry.totalBytes;
+        Path rootPath = getRootPath();
+        for (Path parent = directory.getParent();
+             parent != null && parent.startsWith(rootPath);
+             parent = parent.getParent()) {
+            SizeEntry parentEntry = entries.get(parent);
+            if (parentEntry != null) {
+                parentEntry.totalBytes += delta;
+                parentEntry.covered = isCovered(parent, parentEntry);
+            }
+        }
+        dirty = true;
+    }
+
+    private boolean isCovered(Path directory, SizeEntry entry) {
+        if (!watchedDirectories.contains(directory)) {
+            return false;
+        }
+        for (Path childDirectory : entry.childDirectories) {
+            SizeEntry childEntry = entries.get(childDirectory);
+            if (childEntry == null || !childEntry.covered) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private SizeEntry scan(Path directory, long lastModified) throws IOException {
+        SizeEntry entry = new SizeEntry(lastModified);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(path, BasicFileAttributes.class,
+                            LinkOption.NOFOLLOW_LINKS);
+                } catch (IOException e) {
+                    continue;
+                }
+
+                if (attributes.isDirectory()) {
+                    entry.childDirectories.add(path);
+                } else if (attributes.isRegularFile()) {
+                    entry.ownBytes += attributes.size();
+                }
+            }
+        }
+        return entry;
+    }
+
+    private void removeSubtree(Path directory) {
+        SizeEntry entry = entries.remove(directory);
+        if (entry != null) {
+            entry.childDirectories.forEach(this::removeSubtree);
+        }
+        if (watchedDirectories.remove(directory)) {
+            directoryWatchService.unwatchForIndex(directory);
+        }
+    }
+
+    private boolean watch(Path directory) {
+        if (watchedDirectories.add(directory) && !directoryWatchService.watchForIndex(directory)) {
+            watchedDirectories.remove(directory);
+            return false;
+        }
+        return true;
+    }
+
+    private void load() {
+        if (!Files.exists(indexFile)) {
+            return;
+        }
+
+        Path rootPath = getRootPath();
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (input.readInt() != INDEX_FORMAT_VERSION ||
+                    !rootPath.toString().equals(input.readUTF())) {
+                logger.info("Ignoring incompatible directory size index [{}]", indexFile);
+                return;
+            }
+
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                Path directory = rootPath.resolve(input.readUTF());
+                SizeEntry entry = new SizeEntry(input.readLong());
+                entry.ownBytes = input.readLong();
+                entry.totalBytes = input.readLong();
+                entries.put(directory, entry);
+            }
+            entries.keySet().forEach(directory -> {
+                SizeEntry parentEntry = directory.equals(rootPath) ?
+                        null : entries.get(directory.getParent());
+                if (parentEntry != null) {
+                    parentEntry.childDirectories.add(directory);
+                }
+            });
+            logger.info("Loaded sizes of {} directories from [{}]", count, indexFile);
+        } catch (IOException e) {
+            logger.warn("Failed to load directory size index [{}]: {}", indexFile, e.getMessage());
+            entries.clear();
+        }
+    }
+
+    private void persistIfDirty() {
+        if (!dirty) {
+            return;
+        }
+
+        Path rootPath = getRootPath();
+        try {
+            Files.createDirectories(indexFile.getParent());
+            Path tempFile = Files.createTempFile(indexFile.getParent(), INDEX_FILE_NAME, ".tmp");
+            try {
+                try (DataOutputStream output = new DataOutputStream(
+                        new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                    output.writeInt(INDEX_FORMAT_VERSION);
+                    output.writeUTF(rootPath.toString());
+                    output.writeInt(entries.size());
+                    for (Map.Entry<Path, SizeEntry> mapEntry : entries.entrySet()) {
+                        SizeEntry entry = mapEntry.getValue();
+                        output.writeUTF(rootPath.relativize(mapEntry.getKey()).toString());
+                        output.writeLong(entry.lastModified);
+                        output.writeLong(entry.ownBytes);
+                        output.writeLong(entry.totalBytes);
+                    }
+                }
+                Files.move(tempFile, indexFile,
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                dirty = false;
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to persist directory size index [{}]: {}",
+                    indexFile, e.getMessage());
+        }
+    }
+
+    private Path getRootPath() {
+        return dirService.getRootPath().toAbsolutePath().normalize();
+    }
+
+    private static class SizeEntry {
+        private final long lastModified;
+        private final Set<Path> childDirectories = new HashSet<>();
+        private long ownBytes;
+        private volatile long totalBytes;
+        private volatile boolean covered;
+
+        private SizeEntry(long lastModified) {
+            this.lastModified = lastModified;
+        }
+    }
+}
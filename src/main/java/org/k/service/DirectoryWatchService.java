@@ -0,0 +1,240 @@
+package org.k.service;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+@Service
+public class DirectoryWatchService {
+    private static final Logger logger = LoggerFactory.getLogger(DirectoryWatchService.class);
+    private static final long DEBOUNCE_MILLIS = 100L;
+    private static final long MAX_BATCH_MILLIS = 1000L;
+    private static final Set<String> NETWORK_FILE_SYSTEM_TYPES = ImmutableSet.of(
+            "nfs", "nfs4", "cifs", "smbfs", "smb3", "9p", "ceph", "glusterfs", "lustre", "afs");
+
+    private final WatchService watchService;
+    private final int indexWatchMaxDirectories;
+    private final Map<Path, Registration> registrations = new HashMap<>();
+    private final List<DirectoryChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private final ExecutorService watchExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("dirlist-watch-%d").setDaemon(true).build());
+
+    private int indexedDirectoryCount;
+    private boolean indexLimitReported;
+    private boolean networkFileSystemReported;
+
+    @Autowired
+    public DirectoryWatchService(@Value("${index.watch.max.directories}")
+                                         int indexWatchMaxDirectories) throws IOException {
+        Preconditions.checkArgument(indexWatchMaxDirectories >= 0,
+                "Index watch max directories should not be negative!");
+        this.indexWatchMaxDirectories = indexWatchMaxDirectories;
+        this.watchService = FileSystems.getDefault().newWatchService();
+    }
+
+    @PostConstruct
+    protected void postConstruct() {
+        watchExecutor.submit(this::processEvents);
+    }
+
+    @PreDestroy
+    protected void preDestroy() throws IOException {
+        watchExecutor.shutdownNow();
+        watchService.close();
+    }
+
+    public void addListener(DirectoryChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public synchronized boolean watch(Path directory) {
+        return register(directory, false);
+    }
+
+    public synchronized void unwatch(Path directory) {
+        unregister(directory, false);
+    }
+
+    // The indexes want every directory of the tree, which would exhaust the inotify watches the
+    // listing cache needs. They share one capped set of registrations; directories beyond the
+    // cap are only picked up by the periodic index rebuilds, and so are directories on network
+    // file systems, where inotify only sees the changes made through this host.
+    public synchronized boolean watchForIndex(Path directory) {
+        return register(directory, true);
+    }
+
+    public synchronized void unwatchForIndex(Path directory) {
+        unregister(directory, true);
+    }
+
+    public synchronized int watchedDirectoryCount() {
+        return registrations.size();
+    }
+
+    public synchronized int indexedDirectoryCount() {
+        return indexedDirectoryCount;
+    }
+
+    private boolean register(Path directory, boolean index) {
+        Registration registration = registrations.get(directory);
+        if (index && (registration == null || registration.indexCount == 0) &&
+                indexedDirectoryCount >= indexWatchMaxDirectories) {
+            if (!indexLimitReported) {
+                indexLimitReported = true;
+                logger.warn("Watching {} directories for the indexes, further directories " +
+                        "are only reindexed by periodic rebuilds", indexedDirectoryCount);
+            }
+            return false;
+        }
+        if (index && (registration == null || registration.indexCount == 0) &&
+                isOnNetworkFileSystem(directory)) {
+            return false;
+        }
+
+        if (registration == null) {
+            try {
+                registration = new Registration(directory.register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE,
+                        StandardWatchEventKinds.ENTRY_MODIFY));
+            } catch (IOException | UnsupportedOperationException e) {
+                logger.warn("Failed to watch {}: {}", directory, e.getMessage());
+                return false;
+            }
+            registrations.put(directory, registration);
+        }
+
+        if (!index) {
+            registration.count++;
+        } else if (registration.indexCount++ == 0) {
+            indexedDirectoryCount++;
+        }
+        return true;
+    }
+
+    private void unregister(Path directory, boolean index) {
+        Registration registration = registrations.get(directory);
+        if (registration == null || (index ? registration.indexCount : registration.count) == 0) {
+            return;
+        }
+
+        if (!index) {
+            registration.count--;
+        } else if (--registration.indexCount == 0) {
+            releaseIndexedDirectory();
+        }
+        if (registration.count == 0 && registration.indexCount == 0) {
+            registration.key.cancel();
+            registrations.remove(directory);
+        }
+    }
+
+    private void releaseIndexedDirectory() {
+        indexedDirectoryCount--;
+        if (indexedDirectoryCount < indexWatchMaxDirectories) {
+            indexLimitReported = false;
+        }
+    }
+
+    private void processEvents() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Set<Path> changedDirectories = new LinkedHashSet<>();
+                collect(watchService.take(), changedDirectories);
+
+                long batchDeadline = System.currentTimeMillis() + MAX_BATCH_MILLIS;
+                WatchKey key;
+                while (System.currentTimeMillis() < batchDeadline &&
+                        (key = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    collect(key, changedDirectories);
+                }
+
+                changedDirectories.forEach(this::notifyListeners);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            logger.debug("Directory watcher stopped");
+        }
+    }
+
+    private boolean isOnNetworkFileSystem(Path directory) {
+        String type;
+        try {
+            type = Files.getFileStore(directory).type();
+        } catch (IOException e) {
+            return false;
+        }
+        if (!NETWORK_FILE_SYSTEM_TYPES.contains(type) && !type.startsWith("fuse.")) {
+            return false;
+        }
+        if (!networkFileSystemReported) {
+            networkFileSystemReported = true;
+            logger.warn("{} is on a {} file system, directories there are only reindexed by " +
+                    "periodic rebuilds", directory, type);
+        }
+        return true;
+    }
+
+    private void collect(WatchKey key, Set<Path> changedDirectories) {
+        Path directory = (Path) key.watchable();
+        key.pollEvents();
+        changedDirectories.add(directory);
+        if (!key.reset()) {
+            synchronized (this) {
+                Registration registration = registrations.get(directory);
+                if (registration != null && registration.key == key) {
+                    registrations.remove(directory);
+                    if (registration.indexCount > 0) {
+                        releaseIndexedDirectory();
+                    }
+                }
+            }
+        }
+    }
+
+    private void notifyListeners(Path directory) {
+        for (DirectoryChangeListener listener : listeners) {
+            try {
+                listener.directoryChanged(directory);
+            } catch (Exception e) {
+                logger.error("Failed to handle change of {}", directory, e);
+            }
+        }
+    }
+
+    private static class Registration {
+        private final WatchKey key;
+        private int count;
+        private int indexCount;
+
+        private Registration(WatchKey key) {
+            this.key = key;
+        }
+    }
+}
@@ -54,13 +54,16 @@ public class ExtractionService {
     private final long extractionStatusExpirationSeconds;
 
     private final DirService dirService;
+    private final DirectorySizeService directorySizeService;
 
     @Autowired
     public ExtractionService(DirService dirService,
+                             DirectorySizeService directorySizeService,
                              HazelcastInstance hazelcastInstance,
                              @Value("${extraction.status.expiration.seconds}")
                                      long extractionStatusExpirationSeconds) {
         this.dirService = dirService;
+        this.directorySizeService = directorySizeService;
         this.extractionInfoMap = hazelcastInstance.getMap("extractionInfoMap");
         this.finishedExtractionInfoMap =
                 hazelcastInstance.getMap("finishedExtractionInfoMap");
@@ -253,8 +256,8 @@ public class ExtractionService {
 
         Path infoPath = Paths.get(info.getDestinationPath());
 
-        // todo avoid going to file system
-        long extractedSize = FileUtils.sizeOfDirectory(infoPath.toFile());
+        long extractedSize = directorySizeService.sizeOf(infoPath)
+                .orElseGet(() -> FileUtils.sizeOfDirectory(infoPath.toFile()));
         String destinationPath = dirService.getRootPath()
                 .relativize(Paths.get(info.getDestinationPath())).toString();
         return Optional.of(new ExtractionProgress(id,
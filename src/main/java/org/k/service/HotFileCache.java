@@ -0,0 +1,216 @@
+package org.k.service;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.k.util.FrequencySketch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PreDestroy;
+
+@Service
+public class HotFileCache {
+    private static final Logger logger = LoggerFactory.getLogger(HotFileCache.class);
+    private static final long AVERAGE_FILE_SIZE_ESTIMATE = 16L * 1024L;
+    private static final int MIN_SKETCH_WIDTH = 1024;
+    private static final int MAX_SKETCH_WIDTH = 1 << 22;
+
+    private final boolean hotFileCacheEnabled;
+    private final long hotFileCacheMaxBytes;
+    private final long hotFileCacheMaxFileSizeBytes;
+    private final FrequencySketch frequencySketch;
+    private final Map<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<Path> pendingLoads = ConcurrentHashMap.newKeySet();
+    private final ExecutorService loadExecutor =
+            Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("dirlist-hot-file-cache-%d").setDaemon(true).build());
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong rejectionCount = new AtomicLong();
+
+    private long cachedBytes;
+
+    @Autowired
+    public HotFileCache(@Value("${hot.file.cache.enabled}") boolean hotFileCacheEnabled,
+                        @Value("${hot.file.cache.max.bytes}") long hotFileCacheMaxBytes,
+                        @Value("${hot.file.cache.max.file.size.bytes}")
+                                long hotFileCacheMaxFileSizeBytes) {
+        Preconditions.checkArgument(hotFileCacheMaxBytes >= 0,
+                "Hot file cache max bytes should not be negative!");
+        Preconditions.checkArgument(hotFileCacheMaxFileSizeBytes <= Integer.MAX_VALUE,
+                "Hot file cache max file size should fit into a buffer!");
+        this.hotFileCacheEnabled = hotFileCacheEnabled && hotFileCacheMaxBytes > 0;
+        this.hotFileCacheMaxBytes = hotFileCacheMaxBytes;
+        this.hotFileCacheMaxFileSizeBytes = hotFileCacheMaxFileSizeBytes;
+        long expectedEntries = hotFileCacheMaxBytes / AVERAGE_FILE_SIZE_ESTIMATE;
+        this.frequencySketch = new FrequencySketch(Integer.highestOneBit((int) Math.max(
+                MIN_SKETCH_WIDTH, Math.min(MAX_SKETCH_WIDTH, expectedEntries))));
+    }
+
+    @PreDestroy
+    protected void preDestroy() {
+        loadExecutor.shutdownNow();
+    }
+
+    public Optional<ByteBuffer> get(Path file, long size, long lastModified) {
+        if (!hotFileCacheEnabled || size > hotFileCacheMaxFileSizeBytes) {
+            return Optional.empty();
+        }
+
+        synchronized (this) {
+            frequencySketch.increment(file);
+            Entry entry = entries.get(file);
+            if (entry != null) {
+                if (entry.matches(size, lastModified)) {
+                    hitCount.incrementAndGet();
+                    return Optional.of(entry.content.duplicate());
+                }
+                remove(file);
+            }
+            missCount.incrementAndGet();
+            if (!canAdmit(file, size)) {
+                return Optional.empty();
+            }
+        }
+
+        if (pendingLoads.add(file)) {
+            loadExecutor.execute(() -> load(file, size, lastModified));
+        }
+        return Optional.empty();
+    }
+
+    public synchronized int entryCount() {
+        return entries.size();
+    }
+
+    public synchronized long cachedBytes() {
+        return cachedBytes;
+    }
+
+    public long hitCount() {
+        return hitCount.get();
+    }
+
+    public long missCount() {
+        return missCount.get();
+    }
+
+    public long rejectionCount() {
+        return rejectionCount.get();
+    }
+
+    private void load(Path file, long size, long lastModified) {
+        try {
+            ByteBuffer content = ByteBuffer.allocateDirect((int) size);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                while (content.hasRemaining()) {
+                    if (channel.read(content, content.position()) < 0) {
+                        throw new EOFException("Unexpected end of file " + file);
+                    }
+                }
+            }
+            BasicFileAttributes fileAttributes =
+                    Files.readAttributes(file, BasicFileAttributes.class);
+            if (fileAttributes.size() != size ||
+                    fileAttributes.lastModifiedTime().toMillis() != lastModified) {
+                return;
+            }
+            content.flip();
+
+            synchronized (this) {
+                if (entries.containsKey(file) || !canAdmit(file, size)) {
+                    return;
+                }
+                evictFor(size);
+                entries.put(file, new Entry(content.asReadOnlyBuffer(), size, lastModified));
+                cachedBytes += size;
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to cache {}: {}", file, e.getMessage());
+        } finally {
+            pendingLoads.remove(file);
+        }
+    }
+
+    private boolean canAdmit(Path file, long size) {
+        if (size > hotFileCacheMaxBytes) {
+            return false;
+        }
+
+        long freeBytes = hotFileCacheMaxBytes - cachedBytes;
+        if (freeBytes >= size) {
+            return true;
+        }
+
+        int candidateFrequency = frequencySketch.frequency(file);
+        Iterator<Map.Entry<Path, Entry>> iterator = entries.entrySet().iterator();
+        while (freeBytes < size && iterator.hasNext()) {
+            Map.Entry<Path, Entry> victim = iterator.next();
+            if (frequencySketch.frequency(victim.getKey()) >= candidateFrequency) {
+                rejectionCount.incrementAndGet();
+                return false;
+            }
+            freeBytes += victim.getValue().size;
+        }
+        return freeBytes >= size;
+    }
+
+    private void evictFor(long size) {
+        List<Path> victims = new ArrayList<>();
+        long freeBytes = hotFileCacheMaxBytes - cachedBytes;
+        Iterator<Map.Entry<Path, Entry>> iterator = entries.entrySet().iterator();
+        while (freeBytes < size && iterator.hasNext()) {
+            Map.Entry<Path, Entry> victim = iterator.next();
+            victims.add(victim.getKey());
+            freeBytes += victim.getValue().size;
+        }
+        victims.forEach(this::remove);
+    }
+
+    private void remove(Path file) {
+        Entry entry = entries.remove(file);
+        if (entry != null) {
+            cachedBytes -= entry.size;
+        }
+    }
+
+    private static class Entry {
+        private final ByteBuffer content;
+        private final long size;
+        private final long lastModified;
+
+        private Entry(ByteBuffer content, long size, long lastModified) {
+            this.content = content;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        private boolean matches(long size, long lastModified) {
+            return this.size == size && this.lastModified == lastModified;
+        }
+    }
+}
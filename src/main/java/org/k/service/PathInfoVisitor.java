@@ -0,0 +1,10 @@
+package org.k.service;
+
+import org.k.data.PathInfo;
+
+import java.io.IOException;
+
+@FunctionalInterface
+public interface PathInfoVisitor {
+    void visit(PathInfo pathInfo) throws IOException;
+}
@@ -13,8 +13,10 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Locale;
 import java.util.Optional;
 import java.util.Properties;
+import java.util.zip.Deflater;
 
 @Service
 public class PropertiesService {
@@ -25,6 +27,14 @@ public class PropertiesService {
     private static final String MAX_DIRECTORY_DOWNLOAD_SIZE_BYTES
             = "max.directory.download.size.bytes";
     private static final long DEFAULT_MAX_DIRECTORY_DOWNLOAD_SIZE_BYTES = 1024L * 1024L * 1024L;
+    private static final String MAX_LISTING_PAGE_SIZE = "max.listing.page.size";
+    private static final int DEFAULT_MAX_LISTING_PAGE_SIZE = 1000;
+    private static final String DOWNLOAD_RATE_LIMIT_PREFIX = "download.rate.limit.bytes.per.second.";
+    private static final String GLOBAL_DOWNLOAD_RATE_LIMIT = DOWNLOAD_RATE_LIMIT_PREFIX + "global";
+    private static final long DEFAULT_DOWNLOAD_RATE_LIMIT = 0L;
+    private static final String ZIP_DEFLATE_LEVEL = "zip.deflate.level";
+    private static final String ZSTD_LEVEL = "zstd.level";
+    private static final int DEFAULT_ZSTD_LEVEL = 3;
     private static final String CONFIG_FILE_PATH = Optional
             .ofNullable(System.getenv("CONFIG_FILE"))
             .orElse("/etc/dirlist/config.properties");
@@ -69,4 +79,39 @@ public class PropertiesService {
                 .map(Long::valueOf)
                 .orElse(DEFAULT_MAX_DIRECTORY_DOWNLOAD_SIZE_BYTES);
     }
+
+    public int maxListingPageSize() {
+        return Optional.ofNullable(configProperties
+                .getProperty(MAX_LISTING_PAGE_SIZE))
+                .map(Integer::valueOf)
+                .orElse(DEFAULT_MAX_LISTING_PAGE_SIZE);
+    }
+
+    public long downloadRateLimit(String role) {
+        return Optional.ofNullable(configProperties
+                .getProperty(DOWNLOAD_RATE_LIMIT_PREFIX + role.toLowerCase(Locale.ROOT)))
+                .map(Long::valueOf)
+                .orElse(DEFAULT_DOWNLOAD_RATE_LIMIT);
+    }
+
+    public long globalDownloadRateLimit() {
+        return Optional.ofNullable(configProperties
+                .getProperty(GLOBAL_DOWNLOAD_RATE_LIMIT))
+                .map(Long::valueOf)
+                .orElse(DEFAULT_DOWNLOAD_RATE_LIMIT);
+    }
+
+    public int zipDeflateLevel() {
+        return Optional.ofNullable(configProperties
+                .getProperty(ZIP_DEFLATE_LEVEL))
+                .map(Integer::valueOf)
+                .orElse(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public int zstdLevel() {
+        return Optional.ofNullable(configProperties
+                .getProperty(ZSTD_LEVEL))
+                .map(Integer::valueOf)
+                .orElse(DEFAULT_ZSTD_LEVEL);
+    }
 }
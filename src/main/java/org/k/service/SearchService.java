@@ -0,0 +1,238 @@
+package org.k.service;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.apache.commons.io.FilenameUtils;
+import org.k.data.SearchHit;
+import org.k.exception.SearchIndexNotReadyException;
+import org.k.util.PathIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+@Service
+public class SearchService implements DirectoryChangeListener {
+    private static final Logger logger = LoggerFactory.getLogger(SearchService.class);
+    private static final Set<FileVisitOption> FOLLOW_LINKS =
+            EnumSet.of(FileVisitOption.FOLLOW_LINKS);
+
+    private final DirService dirService;
+    private final DirectoryWatchService directoryWatchService;
+    private final boolean searchIndexEnabled;
+    private final long searchIndexRebuildSeconds;
+    private final ScheduledExecutorService indexExecutor =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("dirlist-search-index-%d").setDaemon(true).build());
+    private final Set<Path> watchedDirectories = new HashSet<>();
+
+    private volatile PathIndex pathIndex;
+    private volatile long lastBuildMillis;
+
+    @Autowired
+    public SearchService(DirService dirService,
+                         DirectoryWatchService directoryWatchService,
+                         @Value("${search.index.enabled}") boolean searchIndexEnabled,
+                         @Value("${search.index.rebuild.seconds}") long searchIndexRebuildSeconds) {
+        Preconditions.checkArgument(searchIndexRebuildSeconds > 0,
+                "Search index rebuild seconds should be bigger than 0!");
+        this.dirService = dirService;
+        this.directoryWatchService = directoryWatchService;
+        this.searchIndexEnabled = searchIndexEnabled;
+        this.searchIndexRebuildSeconds = searchIndexRebuildSeconds;
+    }
+
+    @PostConstruct
+    protected void postConstruct() {
+        if (searchIndexEnabled) {
+            directoryWatchService.addListener(this);
+            indexExecutor.scheduleWithFixedDelay(this::rebuildIndex,
+                    0L, searchIndexRebuildSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    protected void preDestroy() {
+        indexExecutor.shutdownNow();
+    }
+
+    public List<SearchHit> search(String query, int limit) {
+        PathIndex index = pathIndex;
+        if (index == null) {
+            throw new SearchIndexNotReadyException(searchIndexEnabled ?
+                    "Search index is still being built" : "Search index is disabled");
+        }
+        return index.search(query, limit);
+    }
+
+    public int indexedPathCount() {
+        PathIndex index = pathIndex;
+        return index != null ? index.size() : 0;
+    }
+
+    public long lastBuildMillis() {
+        return lastBuildMillis;
+    }
+
+    @Override
+    public void directoryChanged(Path directory) {
+        indexExecutor.execute(() -> rescanDirectory(directory));
+    }
+
+    private void rebuildIndex() {
+        Path rootPath = getRootPath();
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        try {
+            PathIndex index = new PathIndex();
+            crawl(index, PathIndex.ROOT, rootPath);
+            pathIndex = index;
+            lastBuildMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+            logger.info("Indexed {} paths under [{}] in {}", index.size(), rootPath, stopwatch);
+        } catch (Exception e) {
+            logger.error("Failed to build the search index for [{}]", rootPath, e);
+        }
+    }
+
+    private void rescanDirectory(Path directory) {
+        PathIndex index = pathIndex;
+        Path rootPath = getRootPath();
+        if (index == null || !directory.startsWith(rootPath) || !Files.isDirectory(directory)) {
+            return;
+        }
+
+        OptionalInt node = index.find(FilenameUtils.separatorsToUnix(
+                rootPath.relativize(directory).toString()));
+        if (!node.isPresent()) {
+            return;
+        }
+
+        Map<String, Integer> knownChildren = index.children(node.getAsInt());
+        try {
+            Files.walkFileTree(directory, FOLLOW_LINKS, 1,
+                    new SimpleFileVisitor<Path>() {
+                        @Override
+                        public FileVisitResult visitFile(Path path, BasicFileAttributes attributes)
+                                throws IOException {
+                            if (!dirService.isVisible(path, attributes)) {
+                                return FileVisitResult.CONTINUE;
+                            }
+
+                            boolean directoryEntry = attributes.isDirectory();
+                            Integer child = knownChildren.remove(path.getFileName().toString());
+                            if (child != null && index.isDirectory(child) == directoryEntry) {
+                                return FileVisitResult.CONTINUE;
+                            }
+                            if (child != null) {
+                                removeNode(index, child);
+                            }
+
+                            int newNode = index.addChild(node.getAsInt(),
+                                    path.getFileName().toString(), directoryEntry);
+                            if (directoryEntry) {
+                                crawl(index, newNode, path);
+                            }
+                            return FileVisitResult.CONTINUE;
+                        }
+
+                        @Override
+                        public FileVisitResult visitFileFailed(Path path, IOException e) {
+                            logger.debug("Skipping unreadable entry {}: {}", path, e.getMessage());
+                            return FileVisitResult.CONTINUE;
+                        }
+                    });
+        } catch (IOException e) {
+            logger.warn("Failed to rescan [{}] for the search index: {}",
+                    directory, e.getMessage());
+            return;
+        }
+
+        knownChildren.values().forEach(child -> removeNode(index, child));
+    }
+
+    private void crawl(PathIndex index, int startNode, Path startDirectory) throws IOException {
+        Deque<Integer> nodes = new ArrayDeque<>();
+        Files.walkFileTree(startDirectory, FOLLOW_LINKS, Integer.MAX_VALUE,
+                new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir,
+                                                             BasicFileAttributes attributes) {
+                        if (dir.equals(startDirectory)) {
+                            nodes.push(startNode);
+                        } else if (dirService.isVisible(dir, attributes)) {
+                            nodes.push(index.addChild(nodes.peek(),
+                                    dir.getFileName().toString(), true));
+                        } else {
+                            return FileVisitResult.SKIP_SUBTREE;
+                        }
+                        watch(dir);
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                        if (dirService.isVisible(file, attributes)) {
+                            index.addChild(nodes.peek(), file.getFileName().toString(),
+                                    attributes.isDirectory());
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) {
+                        logger.debug("Skipping unreadable entry {}: {}", file, e.getMessage());
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+                        nodes.pop();
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+    }
+
+    private void removeNode(PathIndex index, int node) {
+        Path rootPath = getRootPath();
+        for (String removedDirectory : index.remove(node)) {
+            Path directory = rootPath.resolve(removedDirectory);
+            if (watchedDirectories.remove(directory)) {
+                directoryWatchService.unwatchForIndex(directory);
+            }
+        }
+    }
+
+    private void watch(Path directory) {
+        if (watchedDirectories.add(directory) && !directoryWatchService.watchForIndex(directory)) {
+            watchedDirectories.remove(directory);
+        }
+    }
+
+    private Path getRootPath() {
+        return dirService.getRootPath().toAbsolutePath().normalize();
+    }
+}
@@ -0,0 +1,215 @@
+package org.k.service;
+
+import com.google.common.base.Preconditions;
+
+import org.k.data.PathInfo;
+import org.k.data.PathType;
+import org.k.exception.TreeWalkLimitExceededException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.Semaphore;
+
+import javax.annotation.PreDestroy;
+
+@Service
+public class TreeService {
+    private static final Logger logger = LoggerFactory.getLogger(TreeService.class);
+
+    private final DirService dirService;
+    private final ForkJoinPool treeWalkPool;
+    private final Semaphore walkPermits;
+    private final int treeWalkLookahead;
+
+    @Autowired
+    public TreeService(DirService dirService,
+                       @Value("${tree.walk.parallelism}") int treeWalkParallelism,
+                       @Value("${tree.walk.max.concurrent}") int maxConcurrentTreeWalks,
+                       @Value("${tree.walk.lookahead}") int treeWalkLookahead) {
+        Preconditions.checkArgument(treeWalkParallelism > 0,
+                "Tree walk parallelism should be bigger than 0!");
+        Preconditions.checkArgument(maxConcurrentTreeWalks > 0,
+                "Max concurrent tree walks should be bigger than 0!");
+        Preconditions.checkArgument(treeWalkLookahead > 0,
+                "Tree walk lookahead should be bigger than 0!");
+        this.dirService = dirService;
+        this.treeWalkPool = new ForkJoinPool(treeWalkParallelism);
+        this.walkPermits = new Semaphore(maxConcurrentTreeWalks);
+        this.treeWalkLookahead = treeWalkLookahead;
+    }
+
+    @PreDestroy
+    protected void preDestroy() {
+        treeWalkPool.shutdownNow();
+    }
+
+    public TreeWalk openWalk(String pathString, int maxDepth) throws IOException {
+        Preconditions.checkArgument(maxDepth > 0);
+        if (!walkPermits.tryAcquire()) {
+            throw new TreeWalkLimitExceededException("Too many concurrent tree walks, rejected "
+                    + pathString);
+        }
+
+        try {
+            TreeWalk walk = new TreeWalk(maxDepth);
+            walk.start(dirService.getDirectoryKey(pathString));
+            return walk;
+        } catch (IOException | RuntimeException e) {
+            walkPermits.release();
+            throw e;
+        }
+    }
+
+    // Directories are listed ahead of the visitor in the order it reaches them, but never more
+    // than the lookahead at once, so a slow client holds the walk back. Only the listings on
+    // the current path stay in memory, and visited entries are dropped from them.
+    public class TreeWalk implements AutoCloseable {
+        private final int maxDepth;
+        private final Deque<Level> levels = new ArrayDeque<>();
+        private final Deque<DirectoryTask> pendingTasks = new ArrayDeque<>();
+        private volatile boolean closed;
+
+        private TreeWalk(int maxDepth) {
+            this.maxDepth = maxDepth;
+        }
+
+        private void start(Path dirPath) throws IOException {
+            levels.push(new Level(toTreeEntries(dirService.peekOrReadPathInfos(dirPath), 1)));
+            scheduleLookahead();
+        }
+
+        public void forEach(PathInfoVisitor visitor) throws IOException {
+            while (!levels.isEmpty()) {
+                Level level = levels.peek();
+                if (!level.hasNext()) {
+                    levels.pop();
+                    continue;
+                }
+
+                TreeEntry treeEntry = level.next();
+                visitor.visit(treeEntry.pathInfo);
+                if (treeEntry.subtree != null) {
+                    DirectoryTask subtree = treeEntry.subtree;
+                    levels.push(new Level(pendingTasks.remove(subtree) ?
+                            subtree.join() : subtree.invoke()));
+                }
+                scheduleLookahead();
+            }
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                pendingTasks.forEach(task -> task.cancel(false));
+                pendingTasks.clear();
+                levels.clear();
+                walkPermits.release();
+            }
+        }
+
+        // the innermost listing is reached first, so its directories are scheduled first
+        private void scheduleLookahead() {
+            for (Level level : levels) {
+                while (pendingTasks.size() < treeWalkLookahead && level.hasUnscheduled()) {
+                    DirectoryTask subtree = level.nextUnscheduled();
+                    if (subtree != null) {
+                        treeWalkPool.execute(subtree);
+                        pendingTasks.add(subtree);
+                    }
+                }
+                if (pendingTasks.size() >= treeWalkLookahead) {
+                    return;
+                }
+            }
+        }
+
+        private TreeEntry[] toTreeEntries(List<PathInfo> pathInfos, int depth) {
+            TreeEntry[] treeEntries = new TreeEntry[pathInfos.size()];
+            for (int i = 0; i < treeEntries.length; i++) {
+                PathInfo pathInfo = pathInfos.get(i);
+                Path path = dirService.getDirectoryKey(pathInfo.getPath());
+                boolean descend = depth < maxDepth
+                        && pathInfo.getType() == PathType.DIRECTORY
+                        && !Files.isSymbolicLink(path);
+                treeEntries[i] = new TreeEntry(pathInfo,
+                        descend ? new DirectoryTask(path, depth + 1) : null);
+            }
+            return treeEntries;
+        }
+
+        private class DirectoryTask extends RecursiveTask<TreeEntry[]> {
+            private final Path dirPath;
+            private final int depth;
+
+            private DirectoryTask(Path dirPath, int depth) {
+                this.dirPath = dirPath;
+                this.depth = depth;
+            }
+
+            @Override
+            protected TreeEntry[] compute() {
+                if (closed) {
+                    return new TreeEntry[0];
+                }
+
+                try {
+                    return toTreeEntries(dirService.peekOrReadPathInfos(dirPath), depth);
+                } catch (IOException | RuntimeException e) {
+                    logger.debug("Skipping unreadable directory {}: {}", dirPath, e.getMessage());
+                    return new TreeEntry[0];
+                }
+            }
+        }
+
+        private class TreeEntry {
+            private final PathInfo pathInfo;
+            private final DirectoryTask subtree;
+
+            private TreeEntry(PathInfo pathInfo, DirectoryTask subtree) {
+                this.pathInfo = pathInfo;
+                this.subtree = subtree;
+            }
+        }
+
+        private class Level {
+            private final TreeEntry[] treeEntries;
+            private int next;
+            private int scheduled;
+
+            private Level(TreeEntry[] treeEntries) {
+                this.treeEntries = treeEntries;
+            }
+
+            private boolean hasNext() {
+                return next < treeEntries.length;
+            }
+
+            private TreeEntry next() {
+                TreeEntry treeEntry = treeEntries[next];
+                treeEntries[next++] = null;
+                return treeEntry;
+            }
+
+            private boolean hasUnscheduled() {
+                return Math.max(next, scheduled) < treeEntries.length;
+            }
+
+            private DirectoryTask nextUnscheduled() {
+                scheduled = Math.max(next, scheduled);
+                return treeEntries[scheduled++].subtree;
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package org.k.util;
+
+import com.google.common.base.Splitter;
+
+import java.util.List;
+
+public class AcceptEncoding {
+    private static final Splitter COMMA_SPLITTER =
+            Splitter.on(',').trimResults().omitEmptyStrings();
+    private static final Splitter SEMICOLON_SPLITTER = Splitter.on(';').trimResults();
+    private static final String ANY_CODING = "*";
+    private static final String QUALITY_PREFIX = "q=";
+
+    private AcceptEncoding() {
+    }
+
+    public static boolean accepts(String acceptEncodingHeader, String coding) {
+        if (acceptEncodingHeader == null) {
+            return false;
+        }
+
+        Double anyQuality = null;
+        for (String element : COMMA_SPLITTER.split(acceptEncodingHeader)) {
+            List<String> parts = SEMICOLON_SPLITTER.splitToList(element);
+            double quality = parseQuality(parts);
+            if (parts.get(0).equalsIgnoreCase(coding)) {
+                return quality > 0;
+            }
+            if (ANY_CODING.equals(parts.get(0))) {
+                anyQuality = quality;
+            }
+        }
+        return anyQuality != null && anyQuality > 0;
+    }
+
+    private static double parseQuality(List<String> parts) {
+        for (String parameter : parts.subList(1, parts.size())) {
+            if (parameter.startsWith(QUALITY_PREFIX)) {
+                try {
+                    return Double.parseDouble(parameter.substring(QUALITY_PREFIX.length()));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+}
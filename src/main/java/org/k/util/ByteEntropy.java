@@ -0,0 +1,29 @@
+package org.k.util;
+
+import com.google.common.base.Preconditions;
+
+public final class ByteEntropy {
+    private ByteEntropy() {
+    }
+
+    public static double bitsPerByte(byte[] bytes, int offset, int length) {
+        Preconditions.checkPositionIndexes(offset, offset + length, bytes.length);
+        if (length == 0) {
+            return 0.0;
+        }
+
+        int[] counts = new int[256];
+        for (int i = offset; i < offset + length; i++) {
+            counts[bytes[i] & 0xFF]++;
+        }
+
+        double entropy = 0.0;
+        for (int count : counts) {
+            if (count > 0) {
+                double probability = (double) count / length;
+                entropy -= probability * Math.log(probability);
+            }
+        }
+        return entropy / Math.log(2);
+    }
+}
@@ -1,58 +1,145 @@
 package org.k.util;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
 
 import org.k.exception.RangeNotSatisfiableException;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class ByteRangeSpec {
-    private static final Pattern headerPattern = Pattern.compile("bytes=([0-9]*)-([0-9]*)");
+    private static final String BYTES_UNIT_PREFIX = "bytes=";
+    private static final Pattern rangePattern = Pattern.compile("([0-9]*)-([0-9]*)");
+    private static final Splitter RANGE_SPLITTER = Splitter.on(',').trimResults();
+    private static final int MAX_RANGES = 100;
 
-    private final long start;
-    private final long end;
+    private final List<ByteRange> ranges;
     private final long contentSizeInBytes;
 
-    private ByteRangeSpec(long start, long end, long contentSizeInBytes) {
-        Preconditions.checkArgument(start >= 0);
-        Preconditions.checkArgument(end >= start);
+    private ByteRangeSpec(List<ByteRange> ranges, long contentSizeInBytes) {
+        Preconditions.checkArgument(!ranges.isEmpty());
+        Preconditions.checkArgument(contentSizeInBytes > 0);
+        this.ranges = ImmutableList.copyOf(ranges);
+        this.contentSizeInBytes = contentSizeInBytes;
+    }
+
+    public static ByteRangeSpec fromHeader(String header, long contentSizeInBytes) {
+        Preconditions.checkNotNull(header);
         Preconditions.checkArgument(contentSizeInBytes >= 0);
 
-        if (end >= contentSizeInBytes) {
-            throw new RangeNotSatisfiableException(start + "-" + end);
+        if (!header.regionMatches(true, 0, BYTES_UNIT_PREFIX, 0, BYTES_UNIT_PREFIX.length())) {
+            throw new IllegalArgumentException("Invalid range header: " + header);
         }
 
-        this.start = start;
-        this.end = end;
-        this.contentSizeInBytes = contentSizeInBytes;
+        List<String> rangeStrings = RANGE_SPLITTER.splitToList(
+                header.substring(BYTES_UNIT_PREFIX.length()));
+        if (rangeStrings.size() > MAX_RANGES) {
+            throw new IllegalArgumentException("Too many ranges: " + rangeStrings.size());
+        }
+
+        List<ByteRange> satisfiableRanges = new ArrayList<>();
+        for (String rangeString : rangeStrings) {
+            Matcher matcher = rangePattern.matcher(rangeString);
+            if (!matcher.matches() || matcher.group(1).isEmpty() && matcher.group(2).isEmpty()) {
+                throw new IllegalArgumentException("Invalid range header: " + header);
+            }
+
+            ByteRange range = parseRange(matcher.group(1), matcher.group(2), contentSizeInBytes);
+            if (range != null) {
+                satisfiableRanges.add(range);
+            }
+        }
+
+        if (satisfiableRanges.isEmpty()) {
+            throw new RangeNotSatisfiableException(header, contentSizeInBytes);
+        }
+        return new ByteRangeSpec(coalesce(satisfiableRanges), contentSizeInBytes);
     }
 
-    public static ByteRangeSpec fromHeader(String header, long contentSizeInBytes) {
-        Preconditions.checkNotNull(header);
+    private static ByteRange parseRange(String startString,
+                                        String endString,
+                                        long contentSizeInBytes) {
+        if (startString.isEmpty()) {
+            long suffixLength = Long.parseLong(endString);
+            if (suffixLength == 0 || contentSizeInBytes == 0) {
+                return null;
+            }
+            return new ByteRange(Math.max(0, contentSizeInBytes - suffixLength),
+                    contentSizeInBytes - 1);
+        }
+
+        long start = Long.parseLong(startString);
+        long end = endString.isEmpty() ? Long.MAX_VALUE : Long.parseLong(endString);
+        if (end < start) {
+            throw new IllegalArgumentException("Invalid range: " + startString + "-" + endString);
+        }
+        if (start >= contentSizeInBytes) {
+            return null;
+        }
+        return new ByteRange(start, Math.min(end, contentSizeInBytes - 1));
+    }
+
+    private static List<ByteRange> coalesce(List<ByteRange> ranges) {
+        List<ByteRange> sortedRanges = new ArrayList<>(ranges);
+        sortedRanges.sort(Comparator.comparingLong(ByteRange::getStart));
 
-        Matcher matcher = headerPattern.matcher(header);
-        if (matcher.matches()) {
-            String startStr = matcher.group(1);
-            Long start = startStr != null && !"".equals(startStr) ?
-                    Long.parseLong(startStr) : 0L;
-            String endStr = matcher.group(2);
-            Long end = endStr != null && !"".equals(endStr) ?
-                    Long.parseLong(endStr) : contentSizeInBytes - 1;
-            return new ByteRangeSpec(start, end, contentSizeInBytes);
+        List<ByteRange> coalescedRanges = new ArrayList<>();
+        ByteRange current = sortedRanges.get(0);
+        for (ByteRange next : sortedRanges.subList(1, sortedRanges.size())) {
+            if (next.getStart() <= current.getEnd() + 1) {
+                current = new ByteRange(current.getStart(),
+                        Math.max(current.getEnd(), next.getEnd()));
+            } else {
+                coalescedRanges.add(current);
+                current = next;
+            }
         }
-        throw new IllegalArgumentException("Invalid range header: " + header);
+        coalescedRanges.add(current);
+        return coalescedRanges;
+    }
+
+    public List<ByteRange> getRanges() {
+        return ranges;
+    }
+
+    public boolean isSingleRange() {
+        return ranges.size() == 1;
     }
 
-    public long getStart() {
-        return start;
+    public long getContentSizeInBytes() {
+        return contentSizeInBytes;
     }
 
-    public String buildContentRangeHeader() {
-        return "bytes " + start + "-" + end + "/" + contentSizeInBytes;
+    public String buildContentRangeHeader(ByteRange range) {
+        return "bytes " + range.getStart() + "-" + range.getEnd() + "/" + contentSizeInBytes;
     }
 
-    public long buildContentLengthHeader() {
-        return end - start + 1;
+    public static class ByteRange {
+        private final long start;
+        private final long end;
+
+        public ByteRange(long start, long end) {
+            Preconditions.checkArgument(start >= 0);
+            Preconditions.checkArgument(end >= start);
+            this.start = start;
+            this.end = end;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public long getEnd() {
+            return end;
+        }
+
+        public long getLength() {
+            return end - start + 1;
+        }
     }
 }
@@ -0,0 +1,29 @@
+package org.k.util;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+public class FairShare {
+
+    private FairShare() {
+    }
+
+    public static long[] allocate(long capacity, long[] demands) {
+        Preconditions.checkArgument(capacity >= 0);
+        long[] allocations = new long[demands.length];
+        Integer[] order = IntStream.range(0, demands.length).boxed().toArray(Integer[]::new);
+        Arrays.sort(order, Comparator.comparingLong(i -> demands[i]));
+
+        long remaining = capacity;
+        for (int i = 0; i < order.length; i++) {
+            long share = remaining / (order.length - i);
+            long allocation = Math.min(demands[order[i]], share);
+            allocations[order[i]] = allocation;
+            remaining -= allocation;
+        }
+        return allocations;
+    }
+}
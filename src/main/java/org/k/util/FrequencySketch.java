@@ -0,0 +1,70 @@
+package org.k.util;
+
+import com.google.common.base.Preconditions;
+
+public class FrequencySketch {
+    private static final int DEPTH = 4;
+    private static final int MAX_FREQUENCY = 15;
+    private static final int SAMPLE_SIZE_MULTIPLIER = 10;
+    private static final long[] SEEDS = {
+            0x97cb3127L, 0xd6e8feb8L, 0x6a09e667L, 0xbb67ae85L};
+
+    private final byte[][] counters;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    public FrequencySketch(int width) {
+        Preconditions.checkArgument(width > 0 && Integer.bitCount(width) == 1,
+                "Frequency sketch width should be a power of two!");
+        this.counters = new byte[DEPTH][width];
+        this.mask = width - 1;
+        this.sampleSize = SAMPLE_SIZE_MULTIPLIER * width;
+    }
+
+    public int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = MAX_FREQUENCY;
+        for (int i = 0; i < DEPTH; i++) {
+            frequency = Math.min(frequency, counters[i][indexOf(hash, i)]);
+        }
+        return frequency;
+    }
+
+    public void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < DEPTH; i++) {
+            int index = indexOf(hash, i);
+            if (counters[i][index] < MAX_FREQUENCY) {
+                counters[i][index]++;
+                added = true;
+            }
+        }
+
+        if (added && ++additions == sampleSize) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        for (byte[] row : counters) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] >>>= 1;
+            }
+        }
+        additions /= 2;
+    }
+
+    private int indexOf(int hash, int row) {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        h += h >>> 32;
+        return (int) h & mask;
+    }
+
+    private static int spread(int hash) {
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        return (hash >>> 16) ^ hash;
+    }
+}
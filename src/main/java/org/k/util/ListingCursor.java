@@ -0,0 +1,47 @@
+package org.k.util;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.BaseEncoding;
+
+import org.k.data.PathInfo;
+import org.k.data.PathType;
+import org.k.exception.InvalidPageRequestException;
+
+import java.nio.charset.StandardCharsets;
+
+public class ListingCursor {
+    private static final BaseEncoding ENCODING = BaseEncoding.base64Url().omitPadding();
+    private static final char SEPARATOR = ':';
+
+    private ListingCursor() {
+    }
+
+    public static String encode(PathInfo lastPathInfo) {
+        Preconditions.checkNotNull(lastPathInfo);
+        String raw = lastPathInfo.getType().name() + SEPARATOR + lastPathInfo.getPath();
+        return ENCODING.encode(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static PathInfo decode(String cursor) {
+        Preconditions.checkNotNull(cursor);
+        String raw;
+        try {
+            raw = new String(ENCODING.decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidPageRequestException("Malformed cursor: " + cursor, e);
+        }
+
+        int separatorIndex = raw.indexOf(SEPARATOR);
+        if (separatorIndex < 0) {
+            throw new InvalidPageRequestException("Malformed cursor: " + cursor);
+        }
+
+        PathType type;
+        try {
+            type = PathType.valueOf(raw.substring(0, separatorIndex));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidPageRequestException("Malformed cursor: " + cursor, e);
+        }
+        return new PathInfo(raw.substring(separatorIndex + 1), type, false, 0L, 0L, null);
+    }
+}
@@ -0,0 +1,528 @@
+package org.k.util;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.CountingOutputStream;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+public class ParallelZipWriter implements Closeable {
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    private final CountingOutputStream output;
+    private final Executor deflateExecutor;
+    private final int level;
+    private final int chunkSize;
+    private final int maxPendingChunks;
+    private final Deque<Chunk> pendingChunks = new ArrayDeque<>();
+    private final List<Entry> entries = new ArrayList<>();
+
+    private boolean finished;
+
+    public ParallelZipWriter(OutputStream output,
+                             Executor deflateExecutor,
+                             int level,
+                             int chunkSize,
+                             int maxPendingChunks) {
+        Preconditions.checkArgument(level >= Deflater.DEFAULT_COMPRESSION &&
+                level <= Deflater.BEST_COMPRESSION);
+        Preconditions.checkArgument(chunkSize > 0);
+        Preconditions.checkArgument(maxPendingChunks > 0);
+        this.output = new CountingOutputStream(Preconditions.checkNotNull(output));
+        this.deflateExecutor = Preconditions.checkNotNull(deflateExecutor);
+        this.level = level;
+        this.chunkSize = chunkSize;
+        this.maxPendingChunks = maxPendingChunks;
+    }
+
+    public void addFile(String name, Path file) throws IOException {
+        addFile(name, file, ZipEntry.DEFLATED);
+    }
+
+    public void addFile(String name, Path file, int method) throws IOException {
+        BasicFileAttributes fileAttributes = Files.readAttributes(file, BasicFileAttributes.class);
+        addFile(name, file, method, fileAttributes.size(),
+                fileAttributes.lastModifiedTime().toMillis());
+    }
+
+    // for callers that already read the file's attributes while planning the archive
+    public void addFile(String name, Path file, int method, long size, long lastModified)
+            throws IOException {
+        Preconditions.checkState(!finished);
+        Preconditions.checkArgument(method == ZipEntry.STORED || method == ZipEntry.DEFLATED);
+        Entry entry = new Entry(name, method, size, lastModified);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        entry.channel = channel;
+
+        // every chunk but the last is sync flushed, so the deflated chunks concatenate into one
+        // stream; priming each with the tail of the previous chunk keeps the ratio close to
+        // deflating the whole file at once
+        // stored entries carry their CRC in the local header: an entry whose chunks all fit in
+        // the window is queued whole, and the CRC is combined from its chunks before the first
+        // one is written; only larger files are hashed in a pass of their own
+        try {
+            if (method == ZipEntry.STORED) {
+                long chunkCount = Math.max(1L, (entry.size + chunkSize - 1) / chunkSize);
+                if (chunkCount > maxPendingChunks) {
+                    entry.expectedCrc = computeCrc32(channel, entry.size);
+                    entry.crcComputed = true;
+                } else {
+                    while (pendingChunks.size() + chunkCount > maxPendingChunks) {
+                        writeNextChunk();
+                    }
+                }
+            }
+            long position = 0;
+            do {
+                while (pendingChunks.size() >= maxPendingChunks) {
+                    writeNextChunk();
+                }
+                long chunkPosition = position;
+                int length = (int) Math.min(chunkSize, entry.size - position);
+                boolean first = position == 0;
+                boolean last = position + length >= entry.size;
+                pendingChunks.add(new Chunk(entry, first, last, CompletableFuture.supplyAsync(
+                        () -> method == ZipEntry.STORED ?
+                                read(channel, chunkPosition, length) :
+                                deflate(channel, chunkPosition, length, last),
+                        deflateExecutor)));
+                position += length;
+            } while (position < entry.size);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // copies an unchanged entry from an archive this writer produced before, as is
+    public boolean copyEntry(ZipManifest.Entry source, FileChannel archive) throws IOException {
+        Preconditions.checkState(!finished);
+        Preconditions.checkArgument(
+                source.getMethod() == ZipEntry.STORED || source.getMethod() == ZipEntry.DEFLATED);
+        Entry entry = new Entry(source.getName(), source.getMethod(), source.getSize(),
+                source.getLastModified());
+        if (source.getOffset() + source.getLength() > archive.size() ||
+                !hasLocalFileHeader(archive, source.getOffset(), entry)) {
+            return false;
+        }
+        entry.copied = true;
+        entry.crc = source.getCrc();
+        entry.compressedSize = source.getCompressedSize();
+
+        long position = 0;
+        do {
+            while (pendingChunks.size() >= maxPendingChunks) {
+                writeNextChunk();
+            }
+            long chunkPosition = source.getOffset() + position;
+            int length = (int) Math.min(chunkSize, source.getLength() - position);
+            boolean first = position == 0;
+            boolean last = position + length >= source.getLength();
+            pendingChunks.add(new Chunk(entry, first, last, CompletableFuture.supplyAsync(
+                    () -> copy(archive, chunkPosition, length), deflateExecutor)));
+            position += length;
+        } while (position < source.getLength());
+        return true;
+    }
+
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+
+        while (!pendingChunks.isEmpty()) {
+            writeNextChunk();
+        }
+
+        long centralDirectoryOffset = output.getCount();
+        for (Entry entry : entries) {
+            writeCentralDirectoryHeader(entry);
+        }
+        long centralDirectorySize = output.getCount() - centralDirectoryOffset;
+        output.write(ZipRecords.endOfCentralDirectory(entries.size(), centralDirectoryOffset,
+                centralDirectorySize));
+        output.flush();
+        finished = true;
+    }
+
+    public ZipManifest getManifest() {
+        Preconditions.checkState(finished);
+        return new ZipManifest(level, output.getCount(), entries.stream()
+                .map(entry -> new ZipManifest.Entry(new String(entry.name, StandardCharsets.UTF_8),
+                        entry.size, entry.lastModified, entry.method, entry.crc,
+                        entry.compressedSize, entry.offset, entry.length))
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public void close() throws IOException {
+        finished = true;
+        IOException closeException = null;
+        for (Chunk chunk : pendingChunks) {
+            chunk.deflated.cancel(false);
+            try {
+                closeChannel(chunk.entry);
+            } catch (IOException e) {
+                closeException = e;
+            }
+        }
+        pendingChunks.clear();
+        if (closeException != null) {
+            throw closeException;
+        }
+    }
+
+    private void writeNextChunk() throws IOException {
+        Chunk chunk = pendingChunks.poll();
+        Entry entry = chunk.entry;
+        DeflatedChunk deflated;
+        try {
+            deflated = await(chunk.deflated);
+            if (chunk.first && entry.method == ZipEntry.STORED && !entry.copied &&
+                    !entry.crcComputed) {
+                entry.expectedCrc = combineQueuedCrc32(entry, deflated);
+            }
+        } catch (IOException | RuntimeException e) {
+            closeChannel(entry);
+            throw e;
+        }
+
+        if (chunk.first) {
+            entry.offset = output.getCount();
+            if (!entry.copied) {
+                writeLocalFileHeader(entry);
+            }
+        }
+        output.write(deflated.data, 0, deflated.length);
+        if (!entry.copied) {
+            entry.compressedSize += deflated.length;
+            entry.crc = chunk.first ? deflated.crc :
+                    combineCrc32(entry.crc, deflated.crc, deflated.inputLength);
+        }
+
+        if (chunk.last) {
+            closeChannel(entry);
+            finishEntry(entry);
+            entry.length = output.getCount() - entry.offset;
+            entries.add(entry);
+        }
+    }
+
+    private void finishEntry(Entry entry) throws IOException {
+        if (entry.copied) {
+            return;
+        }
+        if (!entry.isZip64() && entry.compressedSize >= ZipRecords.ZIP64_MAGIC) {
+            throw new IOException("Entry " + new String(entry.name, StandardCharsets.UTF_8) +
+                    " outgrew the 32-bit size fields");
+        }
+        if (entry.method == ZipEntry.STORED) {
+            if (entry.crc != entry.expectedCrc) {
+                throw new IOException("Entry " + new String(entry.name, StandardCharsets.UTF_8) +
+                        " changed while it was being zipped");
+            }
+        } else {
+            writeDataDescriptor(entry);
+        }
+    }
+
+    private boolean hasLocalFileHeader(FileChannel archive, long offset, Entry entry)
+            throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(
+                ZipRecords.localFileHeaderLength(entry.name, entry.isZip64()));
+        while (header.hasRemaining()) {
+            if (archive.read(header, offset + header.position()) < 0) {
+                return false;
+            }
+        }
+        return ZipRecords.isLocalFileHeader(header.array(), entry.name, entry.method);
+    }
+
+    private long combineQueuedCrc32(Entry entry, DeflatedChunk first) throws IOException {
+        long crc = first.crc;
+        for (Chunk chunk : pendingChunks) {
+            if (chunk.entry != entry) {
+                break;
+            }
+            DeflatedChunk deflated = await(chunk.deflated);
+            crc = combineCrc32(crc, deflated.crc, deflated.inputLength);
+        }
+        return crc;
+    }
+
+    // the CRC chunks share the deflate pool, so no more of them are in flight than data chunks
+    private long computeCrc32(FileChannel channel, long size) throws IOException {
+        Deque<CompletableFuture<Long>> chunkCrcs = new ArrayDeque<>();
+        long crc = 0L;
+        long position = 0;
+        long combinedPosition = 0;
+        try {
+            while (combinedPosition < size) {
+                if (position < size && chunkCrcs.size() < maxPendingChunks) {
+                    long chunkPosition = position;
+                    int length = (int) Math.min(chunkSize, size - position);
+                    chunkCrcs.add(CompletableFuture.supplyAsync(
+                            () -> read(channel, chunkPosition, length).crc, deflateExecutor));
+                    position += length;
+                } else {
+                    long length = Math.min(chunkSize, size - combinedPosition);
+                    crc = combineCrc32(crc, await(chunkCrcs.poll()), length);
+                    combinedPosition += length;
+                }
+            }
+        } finally {
+            chunkCrcs.forEach(chunkCrc -> chunkCrc.cancel(false));
+        }
+        return crc;
+    }
+
+    private DeflatedChunk read(FileChannel channel, long position, int length) {
+        byte[] data = copy(channel, position, length).data;
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+        return new DeflatedChunk(data, length, crc.getValue(), length);
+    }
+
+    private DeflatedChunk copy(FileChannel channel, long position, int length) {
+        byte[] data = new byte[length];
+        readFully(channel, ByteBuffer.wrap(data), position);
+        return new DeflatedChunk(data, length, 0L, length);
+    }
+
+    private DeflatedChunk deflate(FileChannel channel, long position, int length, boolean last) {
+        int dictionaryLength = (int) Math.min(DICTIONARY_SIZE, position);
+        byte[] input = new byte[dictionaryLength + length];
+        readFully(channel, ByteBuffer.wrap(input), position - dictionaryLength);
+
+        CRC32 crc = new CRC32();
+        crc.update(input, dictionaryLength, length);
+
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (dictionaryLength > 0) {
+                deflater.setDictionary(input, 0, dictionaryLength);
+            }
+            deflater.setInput(input, dictionaryLength, length);
+            byte[] data = new byte[length + (length >> 8) + 64];
+            int written = 0;
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    if (written == data.length) {
+                        data = Arrays.copyOf(data, data.length * 2);
+                    }
+                    written += deflater.deflate(data, written, data.length - written);
+                }
+            } else {
+                while (true) {
+                    written += deflater.deflate(data, written, data.length - written,
+                            Deflater.SYNC_FLUSH);
+                    if (written < data.length) {
+                        break;
+                    }
+                    data = Arrays.copyOf(data, data.length * 2);
+                }
+            }
+            return new DeflatedChunk(data, written, crc.getValue(), length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void readFully(FileChannel channel, ByteBuffer buffer, long position) {
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new EOFException("Unexpected end of file at position " +
+                            (position + buffer.position()));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeLocalFileHeader(Entry entry) throws IOException {
+        boolean stored = entry.method == ZipEntry.STORED;
+        long knownSize = stored ? entry.size : 0L;
+        output.write(ZipRecords.localFileHeader(entry.name, entry.version(), entry.flags(),
+                entry.method, entry.dosTime, stored ? entry.expectedCrc : 0L, knownSize,
+                knownSize, entry.isZip64()));
+    }
+
+    private void writeDataDescriptor(Entry entry) throws IOException {
+        output.write(ZipRecords.dataDescriptor(entry.crc, entry.compressedSize, entry.size,
+                entry.isZip64()));
+    }
+
+    private void writeCentralDirectoryHeader(Entry entry) throws IOException {
+        output.write(ZipRecords.centralDirectoryHeader(entry.name, entry.version(),
+                entry.flags(), entry.method, entry.dosTime, entry.crc, entry.compressedSize,
+                entry.size, entry.offset));
+    }
+
+    // copied entries read from the caller's archive, which stays open
+    private static void closeChannel(Entry entry) throws IOException {
+        if (entry.channel != null) {
+            entry.channel.close();
+            entry.channel = null;
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        }
+    }
+
+    // zlib's crc32_combine: appends len2 zero bits to crc1 by squaring the CRC shift operator
+    static long combineCrc32(long crc1, long crc2, long len2) {
+        if (len2 <= 0) {
+            return crc1;
+        }
+
+        long[] even = new long[32];
+        long[] odd = new long[32];
+        odd[0] = 0xedb88320L;
+        long row = 1;
+        for (int n = 1; n < 32; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+        gf2MatrixSquare(even, odd);
+        gf2MatrixSquare(odd, even);
+
+        do {
+            gf2MatrixSquare(even, odd);
+            if ((len2 & 1) != 0) {
+                crc1 = gf2MatrixTimes(even, crc1);
+            }
+            len2 >>= 1;
+            if (len2 == 0) {
+                break;
+            }
+            gf2MatrixSquare(odd, even);
+            if ((len2 & 1) != 0) {
+                crc1 = gf2MatrixTimes(odd, crc1);
+            }
+            len2 >>= 1;
+        } while (len2 != 0);
+        return crc1 ^ crc2;
+    }
+
+    private static long gf2MatrixTimes(long[] matrix, long vector) {
+        long sum = 0;
+        for (int i = 0; vector != 0; i++, vector >>>= 1) {
+            if ((vector & 1) != 0) {
+                sum ^= matrix[i];
+            }
+        }
+        return sum;
+    }
+
+    private static void gf2MatrixSquare(long[] square, long[] matrix) {
+        for (int n = 0; n < 32; n++) {
+            square[n] = gf2MatrixTimes(matrix, matrix[n]);
+        }
+    }
+
+    private static class Entry {
+        private final byte[] name;
+        private final int method;
+        private final long size;
+        private final long lastModified;
+        private final int dosTime;
+        private boolean copied;
+        private FileChannel channel;
+        private boolean crcComputed;
+        private long expectedCrc;
+        private long offset;
+        private long crc;
+        private long compressedSize;
+        private long length;
+
+        private Entry(String name, int method, long size, long lastModified) {
+            this.name = name.getBytes(StandardCharsets.UTF_8);
+            Preconditions.checkArgument(this.name.length <= 0xFFFF);
+            this.method = method;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.dosTime = ZipRecords.toDosTime(lastModified);
+        }
+
+        private boolean isZip64() {
+            return size >= ZipRecords.ZIP64_MAGIC;
+        }
+
+        private int version() {
+            if (isZip64()) {
+                return ZipRecords.VERSION_ZIP64;
+            }
+            return method == ZipEntry.STORED ?
+                    ZipRecords.VERSION_STORED : ZipRecords.VERSION_DEFLATED;
+        }
+
+        private int flags() {
+            return method == ZipEntry.STORED ?
+                    ZipRecords.FLAG_UTF8 : ZipRecords.FLAG_DATA_DESCRIPTOR | ZipRecords.FLAG_UTF8;
+        }
+    }
+
+    private static class Chunk {
+        private final Entry entry;
+        private final boolean first;
+        private final boolean last;
+        private final CompletableFuture<DeflatedChunk> deflated;
+
+        private Chunk(Entry entry,
+                      boolean first,
+                      boolean last,
+                      CompletableFuture<DeflatedChunk> deflated) {
+            this.entry = entry;
+            this.first = first;
+            this.last = last;
+            this.deflated = deflated;
+        }
+    }
+
+    private static class DeflatedChunk {
+        private final byte[] data;
+        private final int length;
+        private final long crc;
+        private final long inputLength;
+
+        private DeflatedChunk(byte[] data, int length, long crc, long inputLength) {
+            this.data = data;
+            this.length = length;
+            this.crc = crc;
+            this.inputLength = inputLength;
+        }
+    }
+}
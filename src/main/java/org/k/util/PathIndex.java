@@ -0,0 +1,544 @@
+package org.k.util;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+
+import org.k.data.PathType;
+import org.k.data.SearchHit;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+public class PathIndex {
+    public static final int ROOT = 0;
+    private static final int NONE = -1;
+    private static final int GRAM_LENGTH = 3;
+    private static final int MIN_DEAD_NAMES_TO_COMPACT = 1024;
+    private static final Splitter PATH_SPLITTER = Splitter.on('/').omitEmptyStrings();
+
+    private Map<String, Integer> nameIds = new HashMap<>();
+    private List<String> names = new ArrayList<>();
+    private List<String> lowerCaseNames = new ArrayList<>();
+    private List<IntList> nodesByName = new ArrayList<>();
+    private Map<Long, IntList> namesByTrigram = new HashMap<>();
+    private int deadNameCount;
+
+    private final IntList parents = new IntList();
+    private final IntList nameOfNode = new IntList();
+    private final IntList nameSlots = new IntList();
+    private final IntList subtreeSizes = new IntList();
+    private final IntList firstChildren = new IntList();
+    private final IntList nextSiblings = new IntList();
+    private final BitSet directories = new BitSet();
+    private final BitSet removed = new BitSet();
+    private final IntList freeNodes = new IntList();
+    private int liveNodeCount;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public PathIndex() {
+        createNode(NONE, internName(""), true);
+    }
+
+    public int addChild(int parent, String name, boolean directory) {
+        Preconditions.checkArgument(!name.isEmpty() && name.indexOf('/') < 0,
+                "Invalid path segment: %s", name);
+        lock.writeLock().lock();
+        try {
+            Preconditions.checkArgument(isLive(parent) && directories.get(parent));
+            int node = createNode(parent, internName(name), directory);
+            for (int ancestor = parent; ancestor != NONE; ancestor = parents.get(ancestor)) {
+                subtreeSizes.set(ancestor, subtreeSizes.get(ancestor) + 1);
+            }
+            return node;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<String> remove(int node) {
+        Preconditions.checkArgument(node != ROOT, "Root can not be removed");
+        lock.writeLock().lock();
+        try {
+            if (!isLive(node)) {
+                return ImmutableList.of();
+            }
+            detach(node);
+            int removedCount = subtreeSizes.get(node);
+            for (int ancestor = parents.get(node); ancestor != NONE;
+                 ancestor = parents.get(ancestor)) {
+                subtreeSizes.set(ancestor, subtreeSizes.get(ancestor) - removedCount);
+            }
+
+            List<String> removedDirectories = new ArrayList<>();
+            IntList removedNodes = new IntList();
+            Deque<Integer> stack = new ArrayDeque<>();
+            stack.push(node);
+            while (!stack.isEmpty()) {
+                int current = stack.pop();
+                if (directories.get(current)) {
+                    removedDirectories.add(pathOf(current));
+                }
+                for (int child = firstChildren.get(current); child != NONE;
+                     child = nextSiblings.get(child)) {
+                    stack.push(child);
+                }
+                removedNodes.add(current);
+            }
+            for (int i = 0; i < removedNodes.size(); i++) {
+                release(removedNodes.get(i));
+            }
+            if (deadNameCount >= MIN_DEAD_NAMES_TO_COMPACT && deadNameCount > names.size() / 2) {
+                compactNames();
+            }
+            return removedDirectories;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public OptionalInt find(String relativePath) {
+        lock.readLock().lock();
+        try {
+            int node = ROOT;
+            for (String segment : PATH_SPLITTER.split(relativePath)) {
+                node = findChild(node, segment);
+                if (node == NONE) {
+                    return OptionalInt.empty();
+                }
+            }
+            return OptionalInt.of(node);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Map<String, Integer> children(int node) {
+        lock.readLock().lock();
+        try {
+            Map<String, Integer> children = new HashMap<>();
+            if (isLive(node)) {
+                for (int child = firstChildren.get(node); child != NONE;
+                     child = nextSiblings.get(child)) {
+                    children.put(names.get(nameOfNode.get(child)), child);
+                }
+            }
+            return children;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean isDirectory(int node) {
+        lock.readLock().lock();
+        try {
+            return directories.get(node);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return liveNodeCount - 1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<SearchHit> search(String query, int limit) {
+        Preconditions.checkArgument(!query.isEmpty());
+        Preconditions.checkArgument(limit > 0);
+        String lowerCaseQuery = query.toLowerCase(Locale.ROOT);
+        boolean glob = lowerCaseQuery.indexOf('*') >= 0 || lowerCaseQuery.indexOf('?') >= 0;
+
+        lock.readLock().lock();
+        try {
+            if (lowerCaseQuery.indexOf('/') >= 0) {
+                Pattern pattern = glob ? globPattern(lowerCaseQuery) : null;
+                Predicate<String> pathPredicate = glob ?
+                        path -> pattern.matcher(path).matches() :
+                        path -> path.contains(lowerCaseQuery);
+                return searchPaths(lowerCaseQuery.split("[/*?]+"), pathPredicate, limit);
+            }
+
+            if (glob) {
+                Pattern pattern = globPattern(lowerCaseQuery);
+                String literal = Arrays.stream(lowerCaseQuery.split("[*?]+"))
+                        .reduce("", (l1, l2) -> l2.length() > l1.length() ? l2 : l1);
+                return searchNames(candidateNames(literal),
+                        name -> pattern.matcher(name).matches(), limit);
+            }
+            return searchNames(candidateNames(lowerCaseQuery),
+                    name -> name.contains(lowerCaseQuery), limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int createNode(int parent, int nameId, boolean directory) {
+        int node;
+        if (freeNodes.size() > 0) {
+            node = freeNodes.removeLast();
+            parents.set(node, parent);
+            nameOfNode.set(node, nameId);
+            nameSlots.set(node, nodesByName.get(nameId).size());
+            subtreeSizes.set(node, 1);
+            firstChildren.set(node, NONE);
+            nextSiblings.set(node, NONE);
+            removed.clear(node);
+        } else {
+            node = parents.size();
+            parents.add(parent);
+            nameOfNode.add(nameId);
+            nameSlots.add(nodesByName.get(nameId).size());
+            subtreeSizes.add(1);
+            firstChildren.add(NONE);
+            nextSiblings.add(NONE);
+        }
+        if (parent != NONE) {
+            nextSiblings.set(node, firstChildren.get(parent));
+            firstChildren.set(parent, node);
+        }
+        directories.set(node, directory);
+        nodesByName.get(nameId).add(node);
+        liveNodeCount++;
+        return node;
+    }
+
+    // the slot goes back to the free list and a name no node carries anymore stops matching;
+    // its id and trigram postings are reclaimed by the next compaction
+    private void release(int node) {
+        int nameId = nameOfNode.get(node);
+        IntList nodes = nodesByName.get(nameId);
+        int last = nodes.removeLast();
+        if (last != node) {
+            int slot = nameSlots.get(node);
+            nodes.set(slot, last);
+            nameSlots.set(last, slot);
+        }
+        if (nodes.size() == 0) {
+            nameIds.remove(names.get(nameId));
+            names.set(nameId, null);
+            lowerCaseNames.set(nameId, null);
+            deadNameCount++;
+        }
+        removed.set(node);
+        freeNodes.add(node);
+        liveNodeCount--;
+    }
+
+    // renumbers the live names in their current order, so trigram postings stay sorted
+    private void compactNames() {
+        List<String> oldNames = names;
+        List<IntList> oldNodesByName = nodesByName;
+        int[] newIds = new int[oldNames.size()];
+        nameIds = new HashMap<>();
+        names = new ArrayList<>();
+        lowerCaseNames = new ArrayList<>();
+        nodesByName = new ArrayList<>();
+        namesByTrigram = new HashMap<>();
+        deadNameCount = 0;
+        for (int nameId = 0; nameId < oldNames.size(); nameId++) {
+            if (oldNames.get(nameId) != null) {
+                newIds[nameId] = internName(oldNames.get(nameId));
+                nodesByName.set(newIds[nameId], oldNodesByName.get(nameId));
+            }
+        }
+        for (int node = 0; node < parents.size(); node++) {
+            if (!removed.get(node)) {
+                nameOfNode.set(node, newIds[nameOfNode.get(node)]);
+            }
+        }
+    }
+
+    private int internName(String name) {
+        Integer existingId = nameIds.get(name);
+        if (existingId != null) {
+            return existingId;
+        }
+
+        int nameId = names.size();
+        String lowerCaseName = name.toLowerCase(Locale.ROOT);
+        nameIds.put(name, nameId);
+        names.add(name);
+        lowerCaseNames.add(lowerCaseName);
+        nodesByName.add(new IntList());
+        for (int i = 0; i + GRAM_LENGTH <= lowerCaseName.length(); i++) {
+            IntList postings = namesByTrigram.computeIfAbsent(
+                    trigramAt(lowerCaseName, i), trigram -> new IntList());
+            if (postings.size() == 0 || postings.get(postings.size() - 1) != nameId) {
+                postings.add(nameId);
+            }
+        }
+        return nameId;
+    }
+
+    private void detach(int node) {
+        int parent = parents.get(node);
+        int child = firstChildren.get(parent);
+        if (child == node) {
+            firstChildren.set(parent, nextSiblings.get(node));
+            return;
+        }
+        while (child != NONE) {
+            int next = nextSiblings.get(child);
+            if (next == node) {
+                nextSiblings.set(child, nextSiblings.get(node));
+                return;
+            }
+            child = next;
+        }
+    }
+
+    private int findChild(int node, String name) {
+        Integer nameId = nameIds.get(name);
+        if (nameId == null || !isLive(node)) {
+            return NONE;
+        }
+        for (int child = firstChildren.get(node); child != NONE; child = nextSiblings.get(child)) {
+            if (nameOfNode.get(child) == nameId) {
+                return child;
+            }
+        }
+        return NONE;
+    }
+
+    private boolean isLive(int node) {
+        return node >= 0 && node < parents.size() && !removed.get(node);
+    }
+
+    private IntList candidateNames(String literal) {
+        if (literal.length() < GRAM_LENGTH) {
+            return null;
+        }
+
+        List<IntList> postingLists = new ArrayList<>();
+        for (int i = 0; i + GRAM_LENGTH <= literal.length(); i++) {
+            IntList postings = namesByTrigram.get(trigramAt(literal, i));
+            if (postings == null) {
+                return new IntList();
+            }
+            postingLists.add(postings);
+        }
+        postingLists.sort((l1, l2) -> Integer.compare(l1.size(), l2.size()));
+
+        IntList candidates = postingLists.get(0);
+        for (int i = 1; i < postingLists.size() && candidates.size() > 0; i++) {
+            candidates = candidates.intersect(postingLists.get(i));
+        }
+        return candidates;
+    }
+
+    private List<SearchHit> searchNames(IntList candidateNames,
+                                        Predicate<String> namePredicate,
+                                        int limit) {
+        List<SearchHit> hits = new ArrayList<>();
+        int candidateCount = candidateNames != null ? candidateNames.size() : names.size();
+        for (int i = 0; i < candidateCount && hits.size() < limit; i++) {
+            int nameId = candidateNames != null ? candidateNames.get(i) : i;
+            String lowerCaseName = lowerCaseNames.get(nameId);
+            if (nameId == nameOfNode.get(ROOT) || lowerCaseName == null ||
+                    !namePredicate.test(lowerCaseName)) {
+                continue;
+            }
+
+            IntList nodes = nodesByName.get(nameId);
+            for (int j = 0; j < nodes.size() && hits.size() < limit; j++) {
+                int node = nodes.get(j);
+                if (!removed.get(node)) {
+                    hits.add(toSearchHit(node));
+                }
+            }
+        }
+        return hits;
+    }
+
+    // A literal never spans a separator, so it lies within a single name on every matching
+    // path: only the subtrees under the nodes carrying such a name need to be checked. The
+    // literal leading to the fewest nodes to check is used.
+    private List<SearchHit> searchPaths(String[] literals,
+                                        Predicate<String> pathPredicate,
+                                        int limit) {
+        String literal = null;
+        IntList candidateNames = null;
+        long candidateNodeCount = Long.MAX_VALUE;
+        for (String current : literals) {
+            IntList currentNames = candidateNames(current);
+            long currentNodeCount = currentNames != null ?
+                    subtreeSizeOf(currentNames, candidateNodeCount) : Long.MAX_VALUE;
+            if (currentNodeCount < candidateNodeCount) {
+                literal = current;
+                candidateNames = currentNames;
+                candidateNodeCount = currentNodeCount;
+            }
+        }
+
+        List<SearchHit> hits = new ArrayList<>();
+        if (candidateNames == null) {
+            for (int node = ROOT + 1; node < parents.size() && hits.size() < limit; node++) {
+                if (!removed.get(node) &&
+                        pathPredicate.test(segmentsOf(node).toLowerCase(Locale.ROOT))) {
+                    hits.add(toSearchHit(node));
+                }
+            }
+            return hits;
+        }
+
+        BitSet visited = new BitSet();
+        for (int i = 0; i < candidateNames.size() && hits.size() < limit; i++) {
+            int nameId = candidateNames.get(i);
+            String lowerCaseName = lowerCaseNames.get(nameId);
+            if (lowerCaseName == null || !lowerCaseName.contains(literal)) {
+                continue;
+            }
+
+            IntList nodes = nodesByName.get(nameId);
+            for (int j = 0; j < nodes.size() && hits.size() < limit; j++) {
+                searchSubtree(nodes.get(j), pathPredicate, visited, hits, limit);
+            }
+        }
+        return hits;
+    }
+
+    // stops counting once the bound is reached
+    private long subtreeSizeOf(IntList nameIds, long bound) {
+        long size = 0;
+        for (int i = 0; i < nameIds.size() && size < bound; i++) {
+            IntList nodes = nodesByName.get(nameIds.get(i));
+            for (int j = 0; j < nodes.size(); j++) {
+                size += subtreeSizes.get(nodes.get(j));
+            }
+        }
+        return size;
+    }
+
+    private void searchSubtree(int node,
+                               Predicate<String> pathPredicate,
+                               BitSet visited,
+                               List<SearchHit> hits,
+                               int limit) {
+        Deque<Integer> nodes = new ArrayDeque<>();
+        Deque<String> paths = new ArrayDeque<>();
+        nodes.push(node);
+        paths.push(segmentsOf(node).toLowerCase(Locale.ROOT));
+        while (!nodes.isEmpty() && hits.size() < limit) {
+            int current = nodes.pop();
+            String path = paths.pop();
+            if (visited.get(current)) {
+                continue;
+            }
+            visited.set(current);
+            if (pathPredicate.test(path)) {
+                hits.add(toSearchHit(current));
+            }
+            for (int child = firstChildren.get(current); child != NONE;
+                 child = nextSiblings.get(child)) {
+                nodes.push(child);
+                paths.push(path + "/" + lowerCaseNames.get(nameOfNode.get(child)));
+            }
+        }
+    }
+
+    private SearchHit toSearchHit(int node) {
+        boolean directory = directories.get(node);
+        return new SearchHit(pathOf(node), directory ? PathType.DIRECTORY : PathType.FILE);
+    }
+
+    private String pathOf(int node) {
+        String path = segmentsOf(node);
+        return directories.get(node) && node != ROOT ? path + "/" : path;
+    }
+
+    private String segmentsOf(int node) {
+        Deque<String> segments = new ArrayDeque<>();
+        for (int current = node; current != ROOT; current = parents.get(current)) {
+            segments.push(names.get(nameOfNode.get(current)));
+        }
+        return String.join("/", segments);
+    }
+
+    private static Pattern globPattern(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' && i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                regex.append(".*");
+                i++;
+            } else if (c == '*') {
+                regex.append("[^/]*");
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    private static long trigramAt(String s, int index) {
+        return ((long) s.charAt(index) << 32) |
+                ((long) s.charAt(index + 1) << 16) |
+                s.charAt(index + 2);
+    }
+
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size + (size >> 1) + 1);
+            }
+            values[size++] = value;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        int removeLast() {
+            return values[--size];
+        }
+
+        void set(int index, int value) {
+            values[index] = value;
+        }
+
+        int size() {
+            return size;
+        }
+
+        IntList intersect(IntList other) {
+            IntList result = new IntList();
+            int i = 0;
+            int j = 0;
+            while (i < size && j < other.size) {
+                if (values[i] < other.values[j]) {
+                    i++;
+                } else if (values[i] > other.values[j]) {
+                    j++;
+                } else {
+                    result.add(values[i]);
+                    i++;
+                    j++;
+                }
+            }
+            return result;
+        }
+    }
+}
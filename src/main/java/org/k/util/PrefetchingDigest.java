@@ -0,0 +1,87 @@
+package org.k.util;
+
+import com.google.common.base.Preconditions;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.zip.Checksum;
+
+public final class PrefetchingDigest {
+    private PrefetchingDigest() {
+    }
+
+    public static byte[] digest(FileChannel channel,
+                                long size,
+                                MessageDigest messageDigest,
+                                Checksum checksum,
+                                Executor readExecutor,
+                                int chunkSize,
+                                int readAhead) throws IOException {
+        Preconditions.checkArgument(size >= 0);
+        Preconditions.checkArgument(chunkSize > 0);
+        Preconditions.checkArgument(readAhead > 0);
+
+        // chunk i always lands in buffer i % readAhead, which is free again once chunk
+        // i - readAhead has been digested
+        ByteBuffer[] buffers = new ByteBuffer[readAhead];
+        Deque<CompletableFuture<ByteBuffer>> reads = new ArrayDeque<>(readAhead);
+        long nextPosition = 0;
+        int nextBuffer = 0;
+        while (nextPosition < size || !reads.isEmpty()) {
+            while (nextPosition < size && reads.size() < readAhead) {
+                if (buffers[nextBuffer] == null) {
+                    buffers[nextBuffer] = ByteBuffer.allocate(
+                            (int) Math.min(chunkSize, size));
+                }
+                ByteBuffer buffer = buffers[nextBuffer];
+                long position = nextPosition;
+                int length = (int) Math.min(buffer.capacity(), size - position);
+                buffer.clear();
+                buffer.limit(length);
+                reads.add(CompletableFuture.supplyAsync(
+                        () -> readFully(channel, buffer, position), readExecutor));
+                nextPosition += length;
+                nextBuffer = (nextBuffer + 1) % readAhead;
+            }
+
+            ByteBuffer chunk = await(reads.poll());
+            messageDigest.update(chunk.array(), 0, chunk.limit());
+            checksum.update(chunk.array(), 0, chunk.limit());
+        }
+        return messageDigest.digest();
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, ByteBuffer buffer, long position) {
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new EOFException("Unexpected end of file at position " +
+                            (position + buffer.position()));
+                }
+            }
+            return buffer;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static ByteBuffer await(CompletableFuture<ByteBuffer> read) throws IOException {
+        try {
+            return read.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package org.k.util;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+
+public class StoredZipLayout {
+    private static final int FLAGS = ZipRecords.FLAG_UTF8;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final List<Entry> entries;
+    private final long centralDirectoryOffset;
+    private final long centralDirectorySize;
+    private final long length;
+
+    // entries are laid out in the given order with their CRCs known up front, so the local
+    // headers carry them, as ZipInputStream requires for stored entries, and no range needs
+    // more of a file than the bytes it covers
+    public StoredZipLayout(List<Entry> entries) {
+        this.entries = ImmutableList.copyOf(entries);
+        long offset = 0;
+        long centralDirectorySize = 0;
+        for (Entry entry : this.entries) {
+            entry.offset = offset;
+            offset += entry.getLength();
+            centralDirectorySize += ZipRecords.centralDirectoryHeaderLength(entry.name,
+                    entry.size, entry.size, entry.offset);
+        }
+        this.centralDirectoryOffset = offset;
+        this.centralDirectorySize = centralDirectorySize;
+        this.length = offset + centralDirectorySize + ZipRecords.endOfCentralDirectoryLength(
+                this.entries.size(), centralDirectoryOffset, centralDirectorySize);
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public void write(long position, long count, OutputStream output) throws IOException {
+        for (Slice slice : slices(position, count)) {
+            output.write(slice.header);
+            if (slice.count > 0) {
+                copyData(slice, output);
+            }
+        }
+    }
+
+    // a range as the records it covers, each run of them followed by the part of one file's
+    // data that comes next
+    public List<Slice> slices(long position, long count) {
+        Preconditions.checkArgument(position >= 0 && count >= 0 && position + count <= length);
+        long end = position + count;
+        List<Slice> slices = new ArrayList<>();
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        for (Entry entry : entries) {
+            long entryEnd = entry.offset + entry.getLength();
+            if (entryEnd <= position) {
+                continue;
+            }
+            if (entry.offset >= end) {
+                break;
+            }
+
+            byte[] header = ZipRecords.localFileHeader(entry.name, entry.version(), FLAGS,
+                    ZipEntry.STORED, entry.dosTime, entry.crc, entry.size, entry.size,
+                    entry.isZip64());
+            writeSlice(header, entry.offset, position, end, records);
+
+            long dataOffset = entry.offset + header.length;
+            long dataStart = Math.max(position, dataOffset) - dataOffset;
+            long dataEnd = Math.min(end, dataOffset + entry.size) - dataOffset;
+            if (dataStart < dataEnd) {
+                slices.add(new Slice(records.toByteArray(), entry, dataStart,
+                        dataEnd - dataStart));
+                records.reset();
+            }
+        }
+
+        if (end > centralDirectoryOffset) {
+            long headerOffset = centralDirectoryOffset;
+            for (Entry entry : entries) {
+                int headerLength = ZipRecords.centralDirectoryHeaderLength(entry.name,
+                        entry.size, entry.size, entry.offset);
+                if (headerOffset + headerLength > position && headerOffset < end) {
+                    writeSlice(ZipRecords.centralDirectoryHeader(entry.name,
+                            entry.version(), FLAGS, ZipEntry.STORED, entry.dosTime,
+                            entry.crc, entry.size, entry.size, entry.offset),
+                            headerOffset, position, end, records);
+                }
+                headerOffset += headerLength;
+            }
+            writeSlice(ZipRecords.endOfCentralDirectory(entries.size(), centralDirectoryOffset,
+                    centralDirectorySize), headerOffset, position, end, records);
+        }
+        if (records.size() > 0) {
+            slices.add(new Slice(records.toByteArray(), null, 0L, 0L));
+        }
+        return slices;
+    }
+
+    private void copyData(Slice slice, OutputStream output) throws IOException {
+        Entry entry = slice.entry;
+        try (FileChannel channel = FileChannel.open(entry.file, StandardOpenOption.READ)) {
+            if (channel.size() != entry.size) {
+                throw new IOException("File " + entry.file + " changed while it was being zipped");
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            long position = slice.position;
+            long end = slice.position + slice.count;
+            while (position < end) {
+                buffer.clear().limit((int) Math.min(BUFFER_SIZE, end - position));
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("File " + entry.file +
+                            " changed while it was being zipped");
+                }
+                output.write(buffer.array(), 0, read);
+                position += read;
+            }
+        }
+    }
+
+    private static void writeSlice(byte[] record,
+                                   long recordOffset,
+                                   long position,
+                                   long end,
+                                   ByteArrayOutputStream output) {
+        long from = Math.max(position, recordOffset);
+        long to = Math.min(end, recordOffset + record.length);
+        if (from < to) {
+            output.write(record, (int) (from - recordOffset), (int) (to - from));
+        }
+    }
+
+    public static class Slice {
+        private final byte[] header;
+        private final Entry entry;
+        private final long position;
+        private final long count;
+
+        private Slice(byte[] header, Entry entry, long position, long count) {
+            this.header = header;
+            this.entry = entry;
+            this.position = position;
+            this.count = count;
+        }
+
+        public byte[] getHeader() {
+            return header;
+        }
+
+        public Path getFile() {
+            return entry != null ? entry.file : null;
+        }
+
+        public long getPosition() {
+            return position;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+
+    public static class Entry {
+        private final byte[] name;
+        private final Path file;
+        private final long size;
+        private final long lastModified;
+        private final int dosTime;
+        private final long crc;
+        private long offset;
+
+        public Entry(String name, Path file, long size, long lastModified, long crc) {
+            this.name = name.getBytes(StandardCharsets.UTF_8);
+            Preconditions.checkArgument(this.name.length <= 0xFFFF);
+            Preconditions.checkArgument(size >= 0);
+            this.file = Preconditions.checkNotNull(file);
+            this.size = size;
+            this.lastModified = lastModified;
+            // in UTC, so the bytes behind an ETag do not depend on the time zone of the node
+            this.dosTime = ZipRecords.toDosTime(lastModified, ZoneOffset.UTC);
+            this.crc = crc;
+        }
+
+        public String getName() {
+            return new String(name, StandardCharsets.UTF_8);
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        private boolean isZip64() {
+            return size >= ZipRecords.ZIP64_MAGIC;
+        }
+
+        private int version() {
+            return isZip64() ? ZipRecords.VERSION_ZIP64 : ZipRecords.VERSION_STORED;
+        }
+
+        private long getLength() {
+            return ZipRecords.localFileHeaderLength(name, isZip64()) + size;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package org.k.util;
+
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.TimeUnit;
+
+public class TokenBucket {
+    private long capacity;
+    private double tokensPerNano;
+    private double tokens;
+    private long lastRefillNanos;
+
+    public TokenBucket(long tokensPerSecond, long capacity) {
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.lastRefillNanos = System.nanoTime();
+        setRate(tokensPerSecond, capacity);
+    }
+
+    public synchronized void setRate(long tokensPerSecond, long capacity) {
+        Preconditions.checkArgument(tokensPerSecond > 0);
+        Preconditions.checkArgument(capacity > 0);
+        refill(System.nanoTime());
+        this.tokensPerNano = (double) tokensPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.capacity = capacity;
+        this.tokens = Math.min(capacity, tokens);
+    }
+
+    public synchronized long reserveNanos(long permits) {
+        Preconditions.checkArgument(permits >= 0);
+        refill(System.nanoTime());
+        tokens -= permits;
+        return tokens >= 0 ? 0L : (long) Math.ceil(-tokens / tokensPerNano);
+    }
+
+    private void refill(long nowNanos) {
+        tokens = Math.min(capacity, tokens + (nowNanos - lastRefillNanos) * tokensPerNano);
+        lastRefillNanos = nowNanos;
+    }
+}
@@ -0,0 +1,156 @@
+package org.k.util;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+public class ZipManifest {
+    private static final int FORMAT_VERSION = 1;
+
+    private final int level;
+    private final long archiveLength;
+    private final List<Entry> entries;
+    private final Map<String, Entry> entriesByName;
+
+    public ZipManifest(int level, long archiveLength, List<Entry> entries) {
+        Preconditions.checkArgument(archiveLength >= 0);
+        this.level = level;
+        this.archiveLength = archiveLength;
+        this.entries = ImmutableList.copyOf(entries);
+        this.entriesByName = this.entries.stream()
+                .collect(Collectors.toMap(Entry::getName, Function.identity(), (a, b) -> b));
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public long getArchiveLength() {
+        return archiveLength;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public Optional<Entry> find(String name) {
+        return Optional.ofNullable(entriesByName.get(name));
+    }
+
+    public void writeTo(OutputStream output) throws IOException {
+        DataOutputStream dataOutput = new DataOutputStream(output);
+        dataOutput.writeInt(FORMAT_VERSION);
+        dataOutput.writeInt(level);
+        dataOutput.writeLong(archiveLength);
+        dataOutput.writeInt(entries.size());
+        for (Entry entry : entries) {
+            dataOutput.writeUTF(entry.name);
+            dataOutput.writeLong(entry.size);
+            dataOutput.writeLong(entry.lastModified);
+            dataOutput.writeInt(entry.method);
+            dataOutput.writeLong(entry.crc);
+            dataOutput.writeLong(entry.compressedSize);
+            dataOutput.writeLong(entry.offset);
+            dataOutput.writeLong(entry.length);
+        }
+        dataOutput.flush();
+    }
+
+    public static Optional<ZipManifest> readFrom(InputStream input) throws IOException {
+        DataInputStream dataInput = new DataInputStream(input);
+        if (dataInput.readInt() != FORMAT_VERSION) {
+            return Optional.empty();
+        }
+
+        int level = dataInput.readInt();
+        long archiveLength = dataInput.readLong();
+        int count = dataInput.readInt();
+        ImmutableList.Builder<Entry> entries = ImmutableList.builder();
+        for (int i = 0; i < count; i++) {
+            entries.add(new Entry(dataInput.readUTF(), dataInput.readLong(),
+                    dataInput.readLong(), dataInput.readInt(), dataInput.readLong(),
+                    dataInput.readLong(), dataInput.readLong(), dataInput.readLong()));
+        }
+        return Optional.of(new ZipManifest(level, archiveLength, entries.build()));
+    }
+
+    public static class Entry {
+        private final String name;
+        private final long size;
+        private final long lastModified;
+        private final int method;
+        private final long crc;
+        private final long compressedSize;
+        private final long offset;
+        private final long length;
+
+        public Entry(String name,
+                     long size,
+                     long lastModified,
+                     int method,
+                     long crc,
+                     long compressedSize,
+                     long offset,
+                     long length) {
+            Preconditions.checkArgument(size >= 0);
+            Preconditions.checkArgument(compressedSize >= 0);
+            Preconditions.checkArgument(offset >= 0);
+            Preconditions.checkArgument(length > 0);
+            this.name = Preconditions.checkNotNull(name);
+            this.size = size;
+            this.lastModified = lastModified;
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public int getMethod() {
+            return method;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        // the whole record: local file header, data and data descriptor
+        public long getLength() {
+            return length;
+        }
+
+        public boolean matches(long size, long lastModified) {
+            return this.size == size && this.lastModified == lastModified;
+        }
+    }
+}
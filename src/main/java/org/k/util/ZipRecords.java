@@ -0,0 +1,227 @@
+package org.k.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+final class ZipRecords {
+    static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+    static final int FLAG_UTF8 = 0x0800;
+    static final int VERSION_STORED = 10;
+    static final int VERSION_DEFLATED = 20;
+    static final int VERSION_ZIP64 = 45;
+    static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    private static final int LOCAL_FILE_HEADER_SIGNATURE = 0x04034b50;
+    private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+    private static final int CENTRAL_DIRECTORY_SIGNATURE = 0x02014b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_EXTRA_FIELD_ID = 0x0001;
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+    private ZipRecords() {
+    }
+
+    static int localFileHeaderLength(byte[] name, boolean zip64) {
+        return 30 + name.length + (zip64 ? 20 : 0);
+    }
+
+    // zip64 entries keep their sizes in the extra field, the fixed fields hold the magic value
+    static byte[] localFileHeader(byte[] name,
+                                  int version,
+                                  int flags,
+                                  int method,
+                                  int dosTime,
+                                  long crc,
+                                  long compressedSize,
+                                  long size,
+                                  boolean zip64) {
+        ByteBuffer header = allocate(localFileHeaderLength(name, zip64));
+        header.putInt(LOCAL_FILE_HEADER_SIGNATURE);
+        header.putShort((short) version);
+        header.putShort((short) flags);
+        header.putShort((short) method);
+        header.putInt(dosTime);
+        header.putInt((int) crc);
+        header.putInt(zip64 ? (int) ZIP64_MAGIC : (int) compressedSize);
+        header.putInt(zip64 ? (int) ZIP64_MAGIC : (int) size);
+        header.putShort((short) name.length);
+        header.putShort((short) (zip64 ? 20 : 0));
+        header.put(name);
+        if (zip64) {
+            header.putShort((short) ZIP64_EXTRA_FIELD_ID);
+            header.putShort((short) 16);
+            header.putLong(size);
+            header.putLong(compressedSize);
+        }
+        return header.array();
+    }
+
+    static boolean isLocalFileHeader(byte[] header, byte[] name, int method) {
+        ByteBuffer buffer = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+        if (header.length < 30 + name.length ||
+                buffer.getInt(0) != LOCAL_FILE_HEADER_SIGNATURE ||
+                (buffer.getShort(8) & 0xFFFF) != method ||
+                (buffer.getShort(26) & 0xFFFF) != name.length) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (header[30 + i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static int dataDescriptorLength(boolean zip64) {
+        return zip64 ? 24 : 16;
+    }
+
+    static byte[] dataDescriptor(long crc, long compressedSize, long size, boolean zip64) {
+        ByteBuffer descriptor = allocate(dataDescriptorLength(zip64));
+        descriptor.putInt(DATA_DESCRIPTOR_SIGNATURE);
+        descriptor.putInt((int) crc);
+        if (zip64) {
+            descriptor.putLong(compressedSize);
+            descriptor.putLong(size);
+        } else {
+            descriptor.putInt((int) compressedSize);
+            descriptor.putInt((int) size);
+        }
+        return descriptor.array();
+    }
+
+    static int centralDirectoryHeaderLength(byte[] name,
+                                            long compressedSize,
+                                            long size,
+                                            long offset) {
+        return 46 + name.length + centralDirectoryExtraLength(compressedSize, size, offset);
+    }
+
+    static byte[] centralDirectoryHeader(byte[] name,
+                                         int version,
+                                         int flags,
+                                         int method,
+                                         int dosTime,
+                                         long crc,
+                                         long compressedSize,
+                                         long size,
+                                         long offset) {
+        boolean zip64Size = size >= ZIP64_MAGIC;
+        boolean zip64CompressedSize = compressedSize >= ZIP64_MAGIC;
+        boolean zip64Offset = offset >= ZIP64_MAGIC;
+        int extraLength = centralDirectoryExtraLength(compressedSize, size, offset);
+        if (extraLength > 0) {
+            version = VERSION_ZIP64;
+        }
+
+        ByteBuffer header = allocate(46 + name.length + extraLength);
+        header.putInt(CENTRAL_DIRECTORY_SIGNATURE);
+        header.putShort((short) version);
+        header.putShort((short) version);
+        header.putShort((short) flags);
+        header.putShort((short) method);
+        header.putInt(dosTime);
+        header.putInt((int) crc);
+        header.putInt((int) (zip64CompressedSize ? ZIP64_MAGIC : compressedSize));
+        header.putInt((int) (zip64Size ? ZIP64_MAGIC : size));
+        header.putShort((short) name.length);
+        header.putShort((short) extraLength);
+        header.putShort((short) 0);
+        header.putShort((short) 0);
+        header.putShort((short) 0);
+        header.putInt(0);
+        header.putInt((int) (zip64Offset ? ZIP64_MAGIC : offset));
+        header.put(name);
+        if (extraLength > 0) {
+            header.putShort((short) ZIP64_EXTRA_FIELD_ID);
+            header.putShort((short) (extraLength - 4));
+            if (zip64Size) {
+                header.putLong(size);
+            }
+            if (zip64CompressedSize) {
+                header.putLong(compressedSize);
+            }
+            if (zip64Offset) {
+                header.putLong(offset);
+            }
+        }
+        return header.array();
+    }
+
+    static int endOfCentralDirectoryLength(int count,
+                                           long centralDirectoryOffset,
+                                           long centralDirectorySize) {
+        return (isZip64End(count, centralDirectoryOffset, centralDirectorySize) ? 56 + 20 : 0) +
+                22;
+    }
+
+    // the zip64 end record, when needed, directly follows the central directory
+    static byte[] endOfCentralDirectory(int count,
+                                        long centralDirectoryOffset,
+                                        long centralDirectorySize) {
+        ByteBuffer end = allocate(endOfCentralDirectoryLength(count, centralDirectoryOffset,
+                centralDirectorySize));
+        if (isZip64End(count, centralDirectoryOffset, centralDirectorySize)) {
+            end.putInt(ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+            end.putLong(44L);
+            end.putShort((short) VERSION_ZIP64);
+            end.putShort((short) VERSION_ZIP64);
+            end.putInt(0);
+            end.putInt(0);
+            end.putLong(count);
+            end.putLong(count);
+            end.putLong(centralDirectorySize);
+            end.putLong(centralDirectoryOffset);
+            end.putInt(ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE);
+            end.putInt(0);
+            end.putLong(centralDirectoryOffset + centralDirectorySize);
+            end.putInt(1);
+        }
+
+        end.putInt(END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+        end.putShort((short) 0);
+        end.putShort((short) 0);
+        end.putShort((short) Math.min(count, ZIP64_MAGIC_COUNT));
+        end.putShort((short) Math.min(count, ZIP64_MAGIC_COUNT));
+        end.putInt((int) Math.min(centralDirectorySize, ZIP64_MAGIC));
+        end.putInt((int) Math.min(centralDirectoryOffset, ZIP64_MAGIC));
+        end.putShort((short) 0);
+        return end.array();
+    }
+
+    static int toDosTime(long millis) {
+        return toDosTime(millis, ZoneId.systemDefault());
+    }
+
+    static int toDosTime(long millis, ZoneId zone) {
+        LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), zone);
+        if (time.getYear() < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (time.getYear() - 1980) << 25 | time.getMonthValue() << 21 |
+                time.getDayOfMonth() << 16 | time.getHour() << 11 | time.getMinute() << 5 |
+                time.getSecond() >> 1;
+    }
+
+    private static int centralDirectoryExtraLength(long compressedSize, long size, long offset) {
+        int extraLength = (size >= ZIP64_MAGIC ? 8 : 0) +
+                (compressedSize >= ZIP64_MAGIC ? 8 : 0) + (offset >= ZIP64_MAGIC ? 8 : 0);
+        return extraLength > 0 ? extraLength + 4 : 0;
+    }
+
+    private static boolean isZip64End(int count,
+                                      long centralDirectoryOffset,
+                                      long centralDirectorySize) {
+        return count >= ZIP64_MAGIC_COUNT || centralDirectoryOffset >= ZIP64_MAGIC ||
+                centralDirectorySize >= ZIP64_MAGIC;
+    }
+
+    private static ByteBuffer allocate(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,207 @@
+package org.k.benchmark;
+
+import com.google.common.io.CountingOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.k.util.ParallelZipWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(3)
+public class DirectoryZipBenchmark {
+    private static final int MEGABYTE = 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Param("16")
+    private int fileCount;
+
+    @Param("32")
+    private int fileSizeMegabytes;
+
+    // 0 runs one deflate thread per available processor, like directory.zip.deflate.threads
+    @Param({"1", "2", "4", "0"})
+    private int threads;
+
+    private Path directory;
+    private List<Path> files;
+    private ExecutorService deflateExecutor;
+    private ServerSocketChannel server;
+    private SocketChannel client;
+    private Thread drainThread;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("dirlist-zip-benchmark-");
+        Random random = new Random(42);
+        for (int i = 0; i < fileCount; i++) {
+            Path file = directory.resolve("file-" + i + ".log");
+            try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                long written = 0;
+                while (written < (long) fileSizeMegabytes * MEGABYTE) {
+                    String line = "2017-01-" + (10 + random.nextInt(20)) + " INFO request " +
+                            Long.toHexString(random.nextLong()) + " served in " +
+                            random.nextInt(1000) + "ms\n";
+                    writer.write(line);
+                    written += line.length();
+                }
+            }
+        }
+        try (Stream<Path> paths = Files.list(directory)) {
+            files = paths.sorted().collect(Collectors.toList());
+        }
+        if (threads == 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        deflateExecutor = Executors.newFixedThreadPool(threads);
+
+        server = ServerSocketChannel.open()
+                .bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        client = SocketChannel.open(server.getLocalAddress());
+        SocketChannel peer = server.accept();
+        drainThread = new Thread(() -> {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(MEGABYTE);
+            try {
+                while (peer.read(buffer) >= 0) {
+                    buffer.clear();
+                }
+            } catch (IOException ignored) {
+            }
+        }, "benchmark-drain");
+        drainThread.setDaemon(true);
+        drainThread.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, InterruptedException {
+        deflateExecutor.shutdownNow();
+        client.close();
+        drainThread.join(TimeUnit.SECONDS.toMillis(5));
+        server.close();
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    @Benchmark
+    public long parallelZipWriter() throws IOException {
+        CountingOutputStream output = new CountingOutputStream(socketOutput());
+        try (ParallelZipWriter writer = new ParallelZipWriter(
+                new BufferedOutputStream(output, BUFFER_SIZE), deflateExecutor,
+                Deflater.DEFAULT_COMPRESSION, MEGABYTE, 2 * threads)) {
+            for (Path file : files) {
+                writer.addFile(file.getFileName().toString(), file);
+            }
+            writer.finish();
+        }
+        return output.getCount();
+    }
+
+    @Benchmark
+    public long zipOutputStream() throws IOException {
+        CountingOutputStream output = new CountingOutputStream(socketOutput());
+        try (ZipOutputStream zipOutput = new ZipOutputStream(
+                new BufferedOutputStream(output, BUFFER_SIZE))) {
+            for (Path file : files) {
+                zipOutput.putNextEntry(new ZipEntry(file.getFileName().toString()));
+                Files.copy(file, zipOutput);
+                zipOutput.closeEntry();
+            }
+            zipOutput.finish();
+            zipOutput.flush();
+        }
+        return output.getCount();
+    }
+
+    private OutputStream socketOutput() {
+        return new CloseShieldOutputStream(Channels.newOutputStream(client));
+    }
+
+    // takes the usual JMH options, e.g. -p fileSizeMegabytes=8 -f 1, and prints the speedup of
+    // every thread count over ZipOutputStream and over a single deflate thread
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Collection<RunResult> results = new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(DirectoryZipBenchmark.class.getSimpleName())
+                .build()).run();
+        Map<String, Result> parallel = new TreeMap<>();
+        double baseline = 0;
+        int baselineRuns = 0;
+        for (RunResult result : results) {
+            String method = result.getParams().getBenchmark();
+            if (method.endsWith(".zipOutputStream")) {
+                baseline += result.getPrimaryResult().getScore();
+                baselineRuns++;
+            } else {
+                parallel.put(result.getParams().getParam("threads"), result.getPrimaryResult());
+            }
+        }
+        if (baselineRuns == 0 || !parallel.containsKey("1")) {
+            return;
+        }
+        baseline /= baselineRuns;
+        double singleThread = parallel.get("1").getScore();
+
+        int processors = Runtime.getRuntime().availableProcessors();
+        System.out.printf("%nParallelZipWriter speedup on %d available processors%n", processors);
+        System.out.printf("%8s %22s %16s %16s%n",
+                "threads", "ms/op", "vs ZipOutput", "vs 1 thread");
+        for (Map.Entry<String, Result> entry : parallel.entrySet()) {
+            Result result = entry.getValue();
+            int threads = Integer.parseInt(entry.getKey());
+            System.out.printf("%8s %12.1f ± %7.1f %15.2fx %15.2fx%s%n",
+                    threads == 0 ? processors + " (0)" : entry.getKey(),
+                    result.getScore(), result.getScoreError(),
+                    baseline / result.getScore(), singleThread / result.getScore(),
+                    threads > processors ? "  oversubscribed" : "");
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package org.k.benchmark;
+
+import com.google.common.io.ByteStreams;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RangedDownloadBenchmark {
+    private static final int MEGABYTE = 1024 * 1024;
+
+    @Param("2048")
+    private int fileSizeMegabytes;
+
+    @Param("32")
+    private int rangeMegabytes;
+
+    private Path file;
+    private ServerSocketChannel server;
+    private SocketChannel client;
+    private Thread drainThread;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = Files.createTempFile("dirlist-benchmark-", ".bin");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ByteBuffer chunk = ByteBuffer.allocateDirect(MEGABYTE);
+            byte[] bytes = new byte[MEGABYTE];
+            for (int i = 0; i < fileSizeMegabytes; i++) {
+                ThreadLocalRandom.current().nextBytes(bytes);
+                chunk.clear();
+                chunk.put(bytes).flip();
+                while (chunk.hasRemaining()) {
+                    channel.write(chunk);
+                }
+            }
+        }
+
+        server = ServerSocketChannel.open()
+                .bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        client = SocketChannel.open(server.getLocalAddress());
+        SocketChannel peer = server.accept();
+        drainThread = new Thread(() -> {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(MEGABYTE);
+            try {
+                while (peer.read(buffer) >= 0) {
+                    buffer.clear();
+                }
+            } catch (IOException ignored) {
+            }
+        }, "benchmark-drain");
+        drainThread.setDaemon(true);
+        drainThread.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, InterruptedException {
+        client.close();
+        drainThread.join(TimeUnit.SECONDS.toMillis(5));
+        server.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public long streamCopy() throws IOException {
+        long rangeBytes = (long) rangeMegabytes * MEGABYTE;
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file.toFile(), "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel().position(randomStart(rangeBytes));
+            InputStream input = new BufferedInputStream(
+                    ByteStreams.limit(Channels.newInputStream(channel), rangeBytes));
+            OutputStream output = Channels.newOutputStream(client);
+            return ByteStreams.copy(input, output);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    @Benchmark
+    public long transferTo() throws IOException {
+        long rangeBytes = (long) rangeMegabytes * MEGABYTE;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long position = randomStart(rangeBytes);
+            long end = position + rangeBytes;
+            while (position < end) {
+                position += channel.transferTo(position, end - position, client);
+            }
+            return rangeBytes;
+        }
+    }
+
+    private long randomStart(long rangeBytes) {
+        return ThreadLocalRandom.current()
+                .nextLong((long) fileSizeMegabytes * MEGABYTE - rangeBytes);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RangedDownloadBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
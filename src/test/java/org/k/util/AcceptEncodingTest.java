@@ -0,0 +1,29 @@
+package org.k.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AcceptEncodingTest {
+
+    @Test
+    public void acceptsListedCodings() {
+        assertTrue(AcceptEncoding.accepts("gzip, deflate, br", "br"));
+        assertTrue(AcceptEncoding.accepts("GZIP;q=0.5", "gzip"));
+        assertFalse(AcceptEncoding.accepts("gzip, deflate", "br"));
+        assertFalse(AcceptEncoding.accepts(null, "gzip"));
+    }
+
+    @Test
+    public void rejectsCodingsWithZeroQuality() {
+        assertFalse(AcceptEncoding.accepts("gzip;q=0, br", "gzip"));
+        assertFalse(AcceptEncoding.accepts("*;q=0", "gzip"));
+    }
+
+    @Test
+    public void fallsBackToWildcard() {
+        assertTrue(AcceptEncoding.accepts("identity, *", "br"));
+        assertFalse(AcceptEncoding.accepts("*, br;q=0", "br"));
+    }
+}
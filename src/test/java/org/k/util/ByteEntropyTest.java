@@ -0,0 +1,35 @@
+package org.k.util;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ByteEntropyTest {
+
+    @Test
+    public void measuresUniformAndConstantInput() {
+        byte[] everyByte = new byte[256 * 4];
+        for (int i = 0; i < everyByte.length; i++) {
+            everyByte[i] = (byte) i;
+        }
+
+        assertEquals(8.0, ByteEntropy.bitsPerByte(everyByte, 0, everyByte.length), 1e-9);
+        assertEquals(0.0, ByteEntropy.bitsPerByte(new byte[100], 0, 100), 1e-9);
+        assertEquals(0.0, ByteEntropy.bitsPerByte(new byte[0], 0, 0), 1e-9);
+    }
+
+    @Test
+    public void separatesTextFromRandomData() {
+        byte[] random = new byte[64 * 1024];
+        new Random(3).nextBytes(random);
+        byte[] text = "The quick brown fox jumps over the lazy dog.\n"
+                .getBytes(StandardCharsets.US_ASCII);
+
+        assertTrue(ByteEntropy.bitsPerByte(random, 0, random.length) > 7.9);
+        assertTrue(ByteEntropy.bitsPerByte(text, 0, text.length) < 5.0);
+    }
+}
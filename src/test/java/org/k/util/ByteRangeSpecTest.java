@@ -0,0 +1,76 @@
+package org.k.util;
+
+import org.junit.Test;
+import org.k.exception.RangeNotSatisfiableException;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ByteRangeSpecTest {
+
+    @Test
+    public void parsesClosedAndOpenRanges() {
+        ByteRangeSpec spec = ByteRangeSpec.fromHeader("bytes=100-199", 1000);
+        assertTrue(spec.isSingleRange());
+        assertRange(spec.getRanges().get(0), 100, 199);
+        assertEquals("bytes 100-199/1000",
+                spec.buildContentRangeHeader(spec.getRanges().get(0)));
+
+        assertRange(ByteRangeSpec.fromHeader("bytes=900-", 1000).getRanges().get(0), 900, 999);
+        assertRange(ByteRangeSpec.fromHeader("bytes=900-5000", 1000).getRanges().get(0),
+                900, 999);
+    }
+
+    @Test
+    public void parsesSuffixRanges() {
+        assertRange(ByteRangeSpec.fromHeader("bytes=-500", 1000).getRanges().get(0), 500, 999);
+        assertRange(ByteRangeSpec.fromHeader("bytes=-5000", 1000).getRanges().get(0), 0, 999);
+    }
+
+    @Test
+    public void coalescesOverlappingAndAdjacentRanges() {
+        ByteRangeSpec spec = ByteRangeSpec.fromHeader(
+                "bytes=500-599, 0-99,100-149, 550-700, -10", 1000);
+        List<ByteRangeSpec.ByteRange> ranges = spec.getRanges();
+        assertFalse(spec.isSingleRange());
+        assertEquals(3, ranges.size());
+        assertRange(ranges.get(0), 0, 149);
+        assertRange(ranges.get(1), 500, 700);
+        assertRange(ranges.get(2), 990, 999);
+    }
+
+    @Test
+    public void dropsUnsatisfiableRangesWhenOthersRemain() {
+        ByteRangeSpec spec = ByteRangeSpec.fromHeader("bytes=2000-3000,0-9", 1000);
+        assertTrue(spec.isSingleRange());
+        assertRange(spec.getRanges().get(0), 0, 9);
+    }
+
+    @Test(expected = RangeNotSatisfiableException.class)
+    public void rejectsRangesBeyondTheEnd() {
+        ByteRangeSpec.fromHeader("bytes=1000-1100", 1000);
+    }
+
+    @Test(expected = RangeNotSatisfiableException.class)
+    public void rejectsEmptySuffix() {
+        ByteRangeSpec.fromHeader("bytes=-0", 1000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMalformedRanges() {
+        ByteRangeSpec.fromHeader("bytes=200-100", 1000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownUnits() {
+        ByteRangeSpec.fromHeader("items=0-1", 1000);
+    }
+
+    private static void assertRange(ByteRangeSpec.ByteRange range, long start, long end) {
+        assertEquals(start, range.getStart());
+        assertEquals(end, range.getEnd());
+    }
+}
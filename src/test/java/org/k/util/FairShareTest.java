@@ -0,0 +1,26 @@
+package org.k.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class FairShareTest {
+
+    @Test
+    public void splitsCapacityEquallyBetweenUnlimitedDemands() {
+        assertArrayEquals(new long[]{300, 300, 300},
+                FairShare.allocate(900, new long[]{Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE}));
+    }
+
+    @Test
+    public void redistributesCapacityLeftBySmallDemands() {
+        assertArrayEquals(new long[]{450, 100, 450},
+                FairShare.allocate(1000, new long[]{Long.MAX_VALUE, 100, 600}));
+    }
+
+    @Test
+    public void grantsEveryDemandWhenCapacityIsSufficient() {
+        assertArrayEquals(new long[]{200, 100},
+                FairShare.allocate(1000, new long[]{200, 100}));
+    }
+}
@@ -0,0 +1,38 @@
+package org.k.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class FrequencySketchTest {
+
+    @Test
+    public void countsIncrementsUpToTheMaximum() {
+        FrequencySketch sketch = new FrequencySketch(1024);
+        for (int i = 0; i < 5; i++) {
+            sketch.increment("hot");
+        }
+        sketch.increment("cold");
+
+        assertEquals(5, sketch.frequency("hot"));
+        assertEquals(1, sketch.frequency("cold"));
+        assertEquals(0, sketch.frequency("unknown"));
+
+        for (int i = 0; i < 100; i++) {
+            sketch.increment("hot");
+        }
+        assertEquals(15, sketch.frequency("hot"));
+    }
+
+    @Test
+    public void halvesCountersAfterTheSamplePeriod() {
+        FrequencySketch sketch = new FrequencySketch(1);
+        for (int i = 0; i < 9; i++) {
+            sketch.increment("hot");
+        }
+        assertEquals(9, sketch.frequency("hot"));
+
+        sketch.increment("cold");
+        assertEquals(5, sketch.frequency("hot"));
+    }
+}
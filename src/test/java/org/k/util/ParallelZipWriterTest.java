@@ -0,0 +1,210 @@
+package org.k.util;
+
+import com.google.common.io.ByteStreams;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelZipWriterTest {
+    private ExecutorService deflateExecutor;
+    private Path directory;
+
+    @Before
+    public void setUp() throws Exception {
+        deflateExecutor = Executors.newFixedThreadPool(4);
+        directory = Files.createTempDirectory("parallel-zip");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        deflateExecutor.shutdownNow();
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    @Test
+    public void combinesCrc32OfConcatenatedInputs() {
+        byte[] first = "hello, ".getBytes(StandardCharsets.UTF_8);
+        byte[] second = "parallel world".getBytes(StandardCharsets.UTF_8);
+        CRC32 whole = new CRC32();
+        whole.update(first);
+        whole.update(second);
+
+        assertEquals(whole.getValue(), ParallelZipWriter.combineCrc32(
+                crc32(first), crc32(second), second.length));
+        assertEquals(crc32(first), ParallelZipWriter.combineCrc32(crc32(first), 0L, 0L));
+    }
+
+    @Test
+    public void writesEntriesReadableByZipInputStream() throws Exception {
+        Random random = new Random(7);
+        byte[] incompressible = new byte[10_000];
+        random.nextBytes(incompressible);
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 50_000) {
+            text.append("line ").append(random.nextInt(100)).append('\n');
+        }
+
+        Map<String, byte[]> contents = new LinkedHashMap<>();
+        contents.put("empty.txt", new byte[0]);
+        contents.put("small.txt", "tiny".getBytes(StandardCharsets.UTF_8));
+        contents.put("sub/text.txt", text.toString().getBytes(StandardCharsets.UTF_8));
+        contents.put("random.bin", incompressible);
+        contents.put("ünïcode.txt", "name".getBytes(StandardCharsets.UTF_8));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (ParallelZipWriter writer = new ParallelZipWriter(output, deflateExecutor,
+                Deflater.DEFAULT_COMPRESSION, 4096, 3)) {
+            int i = 0;
+            for (Map.Entry<String, byte[]> content : contents.entrySet()) {
+                Path file = directory.resolve("file" + i++);
+                Files.write(file, content.getValue());
+                writer.addFile(content.getKey(), file);
+            }
+            writer.finish();
+        }
+
+        try (ZipInputStream input = new ZipInputStream(
+                new ByteArrayInputStream(output.toByteArray()))) {
+            for (Map.Entry<String, byte[]> content : contents.entrySet()) {
+                ZipEntry entry = input.getNextEntry();
+                assertEquals(content.getKey(), entry.getName());
+                assertArrayEquals(content.getValue(), ByteStreams.toByteArray(input));
+            }
+            assertNull(input.getNextEntry());
+        }
+    }
+
+    @Test
+    public void writesStoredEntriesWithSizesInLocalHeader() throws Exception {
+        byte[] incompressible = new byte[20_000];
+        new Random(11).nextBytes(incompressible);
+        byte[] thumbnail = new byte[6_000];
+        new Random(13).nextBytes(thumbnail);
+        byte[] text = "deflate me, deflate me, deflate me".getBytes(StandardCharsets.UTF_8);
+        Path storedFile = directory.resolve("stored");
+        Path deflatedFile = directory.resolve("deflated");
+        Path emptyFile = directory.resolve("empty");
+        Path thumbnailFile = directory.resolve("thumbnail");
+        Files.write(storedFile, incompressible);
+        Files.write(thumbnailFile, thumbnail);
+        Files.write(deflatedFile, text);
+        Files.write(emptyFile, new byte[0]);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (ParallelZipWriter writer = new ParallelZipWriter(output, deflateExecutor,
+                Deflater.BEST_SPEED, 4096, 2)) {
+            writer.addFile("photo.jpg", storedFile, ZipEntry.STORED);
+            writer.addFile("notes.txt", deflatedFile, ZipEntry.DEFLATED);
+            writer.addFile("thumbnail.jpg", thumbnailFile, ZipEntry.STORED);
+            writer.addFile("empty.png", emptyFile, ZipEntry.STORED);
+            writer.finish();
+        }
+
+        try (ZipInputStream input = new ZipInputStream(
+                new ByteArrayInputStream(output.toByteArray()))) {
+            ZipEntry stored = input.getNextEntry();
+            assertEquals(ZipEntry.STORED, stored.getMethod());
+            assertEquals(incompressible.length, stored.getSize());
+            assertEquals(crc32(incompressible), stored.getCrc());
+            assertArrayEquals(incompressible, ByteStreams.toByteArray(input));
+
+            ZipEntry deflated = input.getNextEntry();
+            assertEquals(ZipEntry.DEFLATED, deflated.getMethod());
+            assertArrayEquals(text, ByteStreams.toByteArray(input));
+
+            ZipEntry storedThumbnail = input.getNextEntry();
+            assertEquals(ZipEntry.STORED, storedThumbnail.getMethod());
+            assertEquals(crc32(thumbnail), storedThumbnail.getCrc());
+            assertArrayEquals(thumbnail, ByteStreams.toByteArray(input));
+
+            ZipEntry empty = input.getNextEntry();
+            assertEquals(ZipEntry.STORED, empty.getMethod());
+            assertEquals(0, ByteStreams.toByteArray(input).length);
+            assertNull(input.getNextEntry());
+        }
+    }
+
+    @Test
+    public void copiesUnchangedEntriesFromPreviousArchive() throws Exception {
+        byte[] kept = "unchanged, unchanged, unchanged".getBytes(StandardCharsets.UTF_8);
+        byte[] changed = "changed".getBytes(StandardCharsets.UTF_8);
+        Path keptFile = directory.resolve("kept");
+        Path changedFile = directory.resolve("changed");
+        Files.write(keptFile, kept);
+        Files.write(changedFile, "original".getBytes(StandardCharsets.UTF_8));
+
+        Path previousZip = directory.resolve("previous.zip");
+        ZipManifest previousManifest;
+        try (OutputStream output = Files.newOutputStream(previousZip);
+             ParallelZipWriter writer = new ParallelZipWriter(output, deflateExecutor,
+                     Deflater.DEFAULT_COMPRESSION, 8, 2)) {
+            writer.addFile("changed.txt", changedFile);
+            writer.addFile("kept.txt", keptFile);
+            writer.finish();
+            previousManifest = writer.getManifest();
+        }
+        ByteArrayOutputStream manifestOutput = new ByteArrayOutputStream();
+        previousManifest.writeTo(manifestOutput);
+        previousManifest = ZipManifest.readFrom(
+                new ByteArrayInputStream(manifestOutput.toByteArray())).get();
+        assertEquals(Files.size(previousZip), previousManifest.getArchiveLength());
+
+        Files.write(changedFile, changed);
+        ZipManifest.Entry keptEntry = previousManifest.find("kept.txt").get();
+        ZipManifest.Entry misplacedEntry = new ZipManifest.Entry("changed.txt",
+                keptEntry.getSize(), keptEntry.getLastModified(), keptEntry.getMethod(),
+                keptEntry.getCrc(), keptEntry.getCompressedSize(), keptEntry.getOffset(),
+                keptEntry.getLength());
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (FileChannel previousArchive = FileChannel.open(previousZip);
+             ParallelZipWriter writer = new ParallelZipWriter(output, deflateExecutor,
+                     Deflater.DEFAULT_COMPRESSION, 8, 2)) {
+            assertFalse(writer.copyEntry(misplacedEntry, previousArchive));
+            writer.addFile("changed.txt", changedFile);
+            assertTrue(writer.copyEntry(keptEntry, previousArchive));
+            writer.finish();
+            assertEquals(keptEntry.getLength(),
+                    writer.getManifest().find("kept.txt").get().getLength());
+        }
+
+        try (ZipInputStream input = new ZipInputStream(
+                new ByteArrayInputStream(output.toByteArray()))) {
+            assertEquals("changed.txt", input.getNextEntry().getName());
+            assertArrayEquals(changed, ByteStreams.toByteArray(input));
+            assertEquals("kept.txt", input.getNextEntry().getName());
+            assertArrayEquals(kept, ByteStreams.toByteArray(input));
+            assertNull(input.getNextEntry());
+        }
+    }
+
+    private static long crc32(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,120 @@
+package org.k.util;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.k.data.PathType;
+import org.k.data.SearchHit;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PathIndexTest {
+    private PathIndex index;
+
+    @Before
+    public void setUp() {
+        index = new PathIndex();
+        int photos = index.addChild(PathIndex.ROOT, "Photos", true);
+        int summer = index.addChild(photos, "summer", true);
+        index.addChild(summer, "beach.JPG", false);
+        index.addChild(summer, "notes.txt", false);
+        int docs = index.addChild(PathIndex.ROOT, "docs", true);
+        index.addChild(docs, "beach-report.pdf", false);
+    }
+
+    @Test
+    public void findsNamesBySubstringIgnoringCase() {
+        assertEquals(asList("Photos/summer/beach.JPG", "docs/beach-report.pdf"),
+                paths(index.search("BEACH", 10)));
+        assertEquals(asList("Photos/", "Photos/summer/notes.txt"),
+                paths(index.search("ot", 10)));
+    }
+
+    @Test
+    public void findsNamesByGlob() {
+        List<SearchHit> hits = index.search("*.jpg", 10);
+        assertEquals(asList("Photos/summer/beach.JPG"), paths(hits));
+        assertEquals(PathType.FILE, hits.get(0).getType());
+        assertEquals(asList("docs/beach-report.pdf"), paths(index.search("beach-?eport.*", 10)));
+    }
+
+    @Test
+    public void matchesFullPathWhenQueryContainsSeparator() {
+        assertEquals(asList("Photos/summer/notes.txt"),
+                paths(index.search("summer/notes", 10)));
+        assertEquals(asList("Photos/summer/beach.JPG", "Photos/summer/notes.txt"),
+                paths(index.search("photos/*/*", 10)));
+    }
+
+    @Test
+    public void removesSubtrees() {
+        OptionalInt summer = index.find("Photos/summer");
+        assertTrue(summer.isPresent());
+
+        assertEquals(asList("Photos/summer/"), index.remove(summer.getAsInt()));
+        assertFalse(index.find("Photos/summer/notes.txt").isPresent());
+        assertEquals(asList("docs/beach-report.pdf"), paths(index.search("beach", 10)));
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    public void findsPathsThroughTheMostSelectiveLiteral() {
+        assertEquals(asList("Photos/summer/beach.JPG"),
+                paths(index.search("photos/**.jpg", 10)));
+        assertEquals(asList("Photos/summer/", "Photos/summer/beach.JPG",
+                "Photos/summer/notes.txt"), paths(index.search("tos/summer", 10)));
+        assertEquals(asList(), paths(index.search("docs/summer", 10)));
+    }
+
+    @Test
+    public void reusesRemovedNodes() {
+        int summer = index.find("Photos/summer").getAsInt();
+        int beach = index.find("Photos/summer/beach.JPG").getAsInt();
+        int notes = index.find("Photos/summer/notes.txt").getAsInt();
+        index.remove(summer);
+
+        int docs = index.find("docs").getAsInt();
+        int node = index.addChild(docs, "notes.txt", false);
+        assertTrue(node == summer || node == beach || node == notes);
+        assertEquals(asList("docs/notes.txt"), paths(index.search("notes", 10)));
+        assertEquals(4, index.size());
+    }
+
+    @Test
+    public void compactsNamesOfRemovedSubtrees() {
+        int tmp = index.addChild(PathIndex.ROOT, "tmp", true);
+        for (int i = 0; i < 3000; i++) {
+            index.addChild(tmp, "file-" + i, false);
+        }
+        index.remove(tmp);
+
+        assertEquals(asList(), paths(index.search("file-1", 10)));
+        assertEquals(asList("Photos/summer/beach.JPG", "docs/beach-report.pdf"),
+                paths(index.search("beach", 10)));
+        assertTrue(index.find("docs/beach-report.pdf").isPresent());
+
+        int docs = index.find("docs").getAsInt();
+        index.addChild(docs, "file-1", false);
+        assertEquals(asList("docs/file-1"), paths(index.search("file-1", 10)));
+        assertEquals(asList("docs/file-1"), paths(index.search("docs/file", 10)));
+    }
+
+    @Test
+    public void respectsLimit() {
+        assertEquals(1, index.search("beach", 1).size());
+    }
+
+    private static List<String> asList(String... paths) {
+        return Arrays.asList(paths);
+    }
+
+    private static List<String> paths(List<SearchHit> hits) {
+        return hits.stream().map(SearchHit::getPath).sorted().collect(Collectors.toList());
+    }
+}
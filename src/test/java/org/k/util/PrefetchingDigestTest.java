@@ -0,0 +1,63 @@
+package org.k.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class PrefetchingDigestTest {
+    private ExecutorService readExecutor;
+    private Path file;
+    private byte[] content;
+
+    @Before
+    public void setUp() throws Exception {
+        readExecutor = Executors.newFixedThreadPool(3);
+        content = new byte[10_000];
+        new Random(42).nextBytes(content);
+        file = Files.createTempFile("prefetching-digest", ".bin");
+        Files.write(file, content);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        readExecutor.shutdownNow();
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void matchesSequentialDigestAcrossChunkBoundaries() throws Exception {
+        byte[] expected = MessageDigest.getInstance("SHA-256").digest(content);
+        CRC32 expectedCrc = new CRC32();
+        expectedCrc.update(content);
+        for (int chunkSize : new int[]{1000, 1024, 4096, 20_000}) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                CRC32 crc = new CRC32();
+                assertArrayEquals(expected, PrefetchingDigest.digest(channel, content.length,
+                        MessageDigest.getInstance("SHA-256"), crc, readExecutor, chunkSize, 3));
+                assertEquals(expectedCrc.getValue(), crc.getValue());
+            }
+        }
+    }
+
+    @Test(expected = EOFException.class)
+    public void failsWhenTheFileIsShorterThanExpected() throws Exception {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            PrefetchingDigest.digest(channel, content.length + 1L,
+                    MessageDigest.getInstance("SHA-256"), new CRC32(), readExecutor, 1024, 2);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package org.k.util;
+
+import com.google.common.io.ByteStreams;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class StoredZipLayoutTest {
+    private Path directory;
+    private Map<String, byte[]> contents;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("stored-zip");
+        byte[] random = new byte[200_000];
+        new Random(5).nextBytes(random);
+        contents = new LinkedHashMap<>();
+        contents.put("a/empty.txt", new byte[0]);
+        contents.put("a/random.bin", random);
+        contents.put("b/ünïcode.txt", "stored as is".getBytes(StandardCharsets.UTF_8));
+        int i = 0;
+        for (Map.Entry<String, byte[]> content : contents.entrySet()) {
+            Files.write(directory.resolve("file" + i++), content.getValue());
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    @Test
+    public void writesArchiveReadableByZipFileAndZipInputStream() throws Exception {
+        StoredZipLayout layout = plan();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        layout.write(0L, layout.getLength(), output);
+        assertEquals(layout.getLength(), output.size());
+
+        Path zip = directory.resolve("archive.zip");
+        Files.write(zip, output.toByteArray());
+        try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+            assertEquals(contents.size(), zipFile.size());
+            for (Map.Entry<String, byte[]> content : contents.entrySet()) {
+                ZipEntry entry = zipFile.getEntry(content.getKey());
+                assertEquals(ZipEntry.STORED, entry.getMethod());
+                try (InputStream input = zipFile.getInputStream(entry)) {
+                    assertArrayEquals(content.getValue(), ByteStreams.toByteArray(input));
+                }
+            }
+        }
+
+        try (ZipInputStream input = new ZipInputStream(
+                new ByteArrayInputStream(output.toByteArray()))) {
+            for (Map.Entry<String, byte[]> content : contents.entrySet()) {
+                assertEquals(content.getKey(), input.getNextEntry().getName());
+                assertArrayEquals(content.getValue(), ByteStreams.toByteArray(input));
+            }
+            assertNull(input.getNextEntry());
+        }
+    }
+
+    @Test
+    public void writesRangesMatchingTheWholeArchive() throws Exception {
+        StoredZipLayout wholeLayout = plan();
+        ByteArrayOutputStream whole = new ByteArrayOutputStream();
+        wholeLayout.write(0L, wholeLayout.getLength(), whole);
+
+        Random random = new Random(9);
+        ByteArrayOutputStream resumed = new ByteArrayOutputStream();
+        long position = 0;
+        while (position < wholeLayout.getLength()) {
+            long count = Math.min(1 + random.nextInt(70_000),
+                    wholeLayout.getLength() - position);
+            // every range comes from a fresh plan, like a new request
+            plan().write(position, count, resumed);
+            position += count;
+        }
+        assertArrayEquals(whole.toByteArray(), resumed.toByteArray());
+    }
+
+    @Test
+    public void writesSameBytesInEveryTimeZone() throws Exception {
+        TimeZone defaultTimeZone = TimeZone.getDefault();
+        try {
+            TimeZone.setDefault(TimeZone.getTimeZone("Pacific/Kiritimati"));
+            StoredZipLayout eastLayout = plan();
+            ByteArrayOutputStream east = new ByteArrayOutputStream();
+            eastLayout.write(0L, eastLayout.getLength(), east);
+
+            TimeZone.setDefault(TimeZone.getTimeZone("Pacific/Pago_Pago"));
+            StoredZipLayout westLayout = plan();
+            ByteArrayOutputStream west = new ByteArrayOutputStream();
+            westLayout.write(0L, westLayout.getLength(), west);
+
+            assertArrayEquals(east.toByteArray(), west.toByteArray());
+        } finally {
+            TimeZone.setDefault(defaultTimeZone);
+        }
+    }
+
+    private StoredZipLayout plan() throws Exception {
+        List<StoredZipLayout.Entry> entries = new ArrayList<>();
+        int i = 0;
+        for (String name : contents.keySet()) {
+            Path file = directory.resolve("file" + i++);
+            CRC32 crc = new CRC32();
+            crc.update(contents.get(name));
+            entries.add(new StoredZipLayout.Entry(name, file, Files.size(file),
+                    Files.getLastModifiedTime(file).toMillis(), crc.getValue()));
+        }
+        return new StoredZipLayout(entries);
+    }
+}